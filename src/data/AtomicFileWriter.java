@@ -0,0 +1,54 @@
+package data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes a file the solver keeps between runs, such as a feedback table, a
+ * decision tree or an opening book. The file is written under a temporary name
+ * in its directory and then atomically moved into place, replacing any older
+ * file, so readers see either the old file or the complete new one and an
+ * interrupted run never leaves a partial file behind.
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ *
+ */
+public abstract class AtomicFileWriter
+{
+	/**
+	 * Writes the complete contents.
+	 *
+	 * @param file
+	 *            The temporary file to write to.
+	 * @throws IOException
+	 */
+	protected abstract void write(File file) throws IOException;
+
+	/**
+	 * Writes the file, creating its directory if needed.
+	 *
+	 * @param directory
+	 *            The directory of the file.
+	 * @param file
+	 * @throws IOException
+	 */
+	public void writeTo(File directory, File file) throws IOException
+	{
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Cannot create directory " + directory);
+		File tempFile = File.createTempFile(file.getName(), ".tmp", directory);
+		try
+		{
+			write(tempFile);
+			Files.move(tempFile.toPath(), file.toPath(),
+					StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+		finally
+		{
+			tempFile.delete();
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package data;
+
+/**
+ * A BatchFeedbackKernel scores one guess against every code of a CodeBatch at
+ * once. Blacks are counted by comparing the guess against each peg column and
+ * whites follow from the color count columns, since the number of matching
+ * colors is the sum over all colors of the smaller of both counts.
+ *
+ * The shared instance uses the Vector API (jdk.incubator.vector) when that
+ * module is available to the JVM, and a scalar loop otherwise.
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ *
+ */
+public abstract class BatchFeedbackKernel
+{
+	/**
+	 * System property which, when set to "scalar", turns the vector kernel
+	 * off.
+	 */
+	public static final String KERNEL_PROPERTY = "mastermind.kernel";
+
+	private static final String VECTOR_KERNEL_CLASS = "data.VectorFeedbackKernel";
+
+	private static final BatchFeedbackKernel instance = loadKernel();
+
+	/**
+	 *
+	 * @return The fastest kernel available.
+	 */
+	public static BatchFeedbackKernel getInstance()
+	{
+		return instance;
+	}
+
+	/**
+	 * The working space of a kernel: the colors of the guess, their counts and
+	 * the blacks and matches of every code. The caller keeps one per thread, so
+	 * scoring does not allocate.
+	 */
+	public static class Scratch
+	{
+		final byte[] guessPegs;
+		final byte[] guessColorCounts;
+		byte[] blacks;
+		byte[] matches;
+
+		/**
+		 * 
+		 * @param nrPegs
+		 * @param nrColors
+		 * @param capacity
+		 *            The number of codes of the largest batch scored.
+		 */
+		public Scratch(int nrPegs, int nrColors, int capacity)
+		{
+			guessPegs = new byte[nrPegs];
+			guessColorCounts = new byte[nrColors];
+			blacks = new byte[capacity];
+			matches = new byte[capacity];
+		}
+
+		/**
+		 * 
+		 * @return The number of blacks for each code last scored.
+		 */
+		public byte[] getBlacks()
+		{
+			return blacks;
+		}
+
+		/**
+		 * 
+		 * @return The number of blacks and whites for each code last scored.
+		 */
+		public byte[] getMatches()
+		{
+			return matches;
+		}
+
+		/**
+		 * Grows the arrays to hold a batch, if needed.
+		 * 
+		 * @param size
+		 */
+		void fit(int size)
+		{
+			if (blacks.length < size)
+			{
+				blacks = new byte[size * 2];
+				matches = new byte[size * 2];
+			}
+		}
+	}
+
+	/**
+	 * Scores a guess against every code in the batch.
+	 *
+	 * @param codes
+	 *            The codes being guessed.
+	 * @param guess
+	 *            The packed guess.
+	 * @param scratch
+	 *            Filled with the blacks and matches of each code.
+	 */
+	public abstract void score(CodeBatch codes, long guess, Scratch scratch);
+
+	/**
+	 * Scores a guess against every code in the batch and counts how many codes
+	 * give each feedback.
+	 *
+	 * @param codes
+	 *            The codes being guessed.
+	 * @param guess
+	 *            The packed guess.
+	 * @param partitionSizes
+	 *            Filled with the number of codes for each feedback ordinal.
+	 * @param scratch
+	 */
+	public void fillPartitionSizes(CodeBatch codes, long guess,
+			int[] partitionSizes, Scratch scratch)
+	{
+		FeedbackSpace feedbackSpace = FeedbackSpace.forPegs(codes.getNrPegs());
+		score(codes, guess, scratch);
+		byte[] blacks = scratch.blacks;
+		byte[] matches = scratch.matches;
+
+		for (int i = 0; i < partitionSizes.length; i++)
+			partitionSizes[i] = 0;
+		for (int i = 0; i < codes.size(); i++)
+			partitionSizes[feedbackSpace.ordinalOf(blacks[i], matches[i]
+					- blacks[i])]++;
+	}
+
+	/**
+	 *
+	 * @return A short name for this kernel.
+	 */
+	public abstract String getName();
+
+	/**
+	 * Computes the colors of the guess, starting from zero, and how often each
+	 * one appears, and makes room for the results of a batch.
+	 *
+	 * @param guess
+	 * @param codes
+	 *            The batch about to be scored.
+	 * @param scratch
+	 */
+	protected static void prepare(long guess, CodeBatch codes, Scratch scratch)
+	{
+		int nrPegs = codes.getNrPegs();
+		byte[] guessPegs = scratch.guessPegs;
+		byte[] guessColorCounts = scratch.guessColorCounts;
+		scratch.fit(codes.size());
+		for (int c = 0; c < guessColorCounts.length; c++)
+			guessColorCounts[c] = 0;
+		for (int p = 0; p < nrPegs; p++)
+		{
+			guessPegs[p] = (byte) (PackedCode.pegAt(guess, p) - 1);
+			guessColorCounts[guessPegs[p]]++;
+		}
+	}
+
+	private static BatchFeedbackKernel loadKernel()
+	{
+		if (!"scalar".equals(System.getProperty(KERNEL_PROPERTY)))
+		{
+			try
+			{
+				return (BatchFeedbackKernel) Class.forName(VECTOR_KERNEL_CLASS)
+						.getDeclaredConstructor().newInstance();
+			}
+			catch (Throwable e)
+			{
+				// The incubator module is not available, fall through
+			}
+		}
+		return new ScalarFeedbackKernel();
+	}
+}
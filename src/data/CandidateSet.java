@@ -0,0 +1,247 @@
+package data;
+
+/**
+ * A CandidateSet holds the codes of a (pegs, colors) code space that are still
+ * possible, as a dense bitset over code ranks (see PackedCode). Filtering by a
+ * (guess, feedback) pair walks the set words in order and clears every bit
+ * whose code would not have given that feedback, and sizes are counted with
+ * popcounts.
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ *
+ */
+public class CandidateSet
+{
+	private static final int WORD_BITS = 64;
+	private static final int WORD_SHIFT = 6;
+
+	private final int spaceSize;
+	private final long[] words;
+
+	/**
+	 * Constructs a set holding every code of the space.
+	 *
+	 * @param spaceSize
+	 *            The number of codes in the space.
+	 */
+	public CandidateSet(int spaceSize)
+	{
+		this.spaceSize = spaceSize;
+		words = new long[(spaceSize + WORD_BITS - 1) >>> WORD_SHIFT];
+		addAll();
+	}
+
+	/**
+	 * Puts every code of the space back in the set.
+	 */
+	public void addAll()
+	{
+		for (int i = 0; i < words.length; i++)
+			words[i] = -1L;
+		if ((spaceSize & (WORD_BITS - 1)) != 0)
+			words[words.length - 1] = (1L << spaceSize) - 1;
+	}
+
+	/**
+	 *
+	 * @param rank
+	 *            The rank of a code.
+	 * @return True if the code is in the set.
+	 */
+	public boolean contains(int rank)
+	{
+		return (words[rank >>> WORD_SHIFT] & (1L << rank)) != 0;
+	}
+
+	/**
+	 *
+	 * @return The number of codes in the set.
+	 */
+	public int size()
+	{
+		int size = 0;
+		for (int i = 0; i < words.length; i++)
+			size += Long.bitCount(words[i]);
+		return size;
+	}
+
+	/**
+	 *
+	 * @return The rank of the lowest code in the set, or -1 if it is empty.
+	 */
+	public int first()
+	{
+		return nextRank(0);
+	}
+
+	/**
+	 *
+	 * @param fromRank
+	 *            The rank to start searching from, inclusive.
+	 * @return The lowest rank in the set at or after fromRank, or -1 if there
+	 *         is none.
+	 */
+	public int nextRank(int fromRank)
+	{
+		int wordIndex = fromRank >>> WORD_SHIFT;
+		if (wordIndex >= words.length)
+			return -1;
+
+		long word = words[wordIndex] & (-1L << fromRank);
+		while (word == 0)
+		{
+			if (++wordIndex == words.length)
+				return -1;
+			word = words[wordIndex];
+		}
+		return (wordIndex << WORD_SHIFT) + Long.numberOfTrailingZeros(word);
+	}
+
+	/**
+	 *
+	 * @return The ranks of the codes in the set, in increasing order.
+	 */
+	public int[] toRankArray()
+	{
+		int[] ranks = new int[size()];
+		int nrRanks = 0;
+		for (int i = 0; i < words.length; i++)
+		{
+			long word = words[i];
+			while (word != 0)
+			{
+				ranks[nrRanks++] = (i << WORD_SHIFT)
+						+ Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+			}
+		}
+		return ranks;
+	}
+
+	/**
+	 * Picks at most maxSize codes evenly spread over the set without building
+	 * the full list of ranks first.
+	 *
+	 * @param maxSize
+	 *            The largest number of ranks to return.
+	 * @return The picked ranks, in increasing order.
+	 */
+	public int[] toSpreadRankArray(int maxSize)
+	{
+		int size = size();
+		if (size <= maxSize)
+			return toRankArray();
+
+		int[] ranks = new int[maxSize];
+		int nrRanks = 0;
+		long position = 0;
+		long nextPick = 0;
+		for (int i = 0; i < words.length && nrRanks < maxSize; i++)
+		{
+			long word = words[i];
+			while (word != 0 && nrRanks < maxSize)
+			{
+				if (position == nextPick)
+				{
+					ranks[nrRanks++] = (i << WORD_SHIFT)
+							+ Long.numberOfTrailingZeros(word);
+					nextPick = (long) nrRanks * size / maxSize;
+				}
+				position++;
+				word &= word - 1;
+			}
+		}
+		return ranks;
+	}
+
+	/**
+	 * Keeps only the codes that are also in the given mask.
+	 *
+	 * @param mask
+	 *            A bitset over the same code space.
+	 */
+	public void retainAll(long[] mask)
+	{
+		for (int i = 0; i < words.length; i++)
+			words[i] &= mask[i];
+	}
+
+	/**
+	 * Keeps only the codes that give the feedback for the guess, looking the
+	 * feedback up in a table. The mask for each word is built on the fly from
+	 * the codes still in it.
+	 *
+	 * @param table
+	 *            The feedback table for this code space.
+	 * @param guessRank
+	 *            The rank of the guess.
+	 * @param feedbackOrdinal
+	 *            The ordinal of the feedback given for the guess.
+	 */
+	public void retainFeedback(FeedbackTable table, int guessRank,
+			int feedbackOrdinal)
+	{
+		for (int i = 0; i < words.length; i++)
+		{
+			long word = words[i];
+			long mask = 0L;
+			while (word != 0)
+			{
+				int bit = Long.numberOfTrailingZeros(word);
+				if (table.getFeedbackOrdinal(guessRank, (i << WORD_SHIFT) + bit) == feedbackOrdinal)
+					mask |= 1L << bit;
+				word &= word - 1;
+			}
+			words[i] &= mask;
+		}
+	}
+
+	/**
+	 * Keeps only the codes that give the feedback for the guess, scoring the
+	 * codes directly.
+	 *
+	 * @param guess
+	 *            The packed guess.
+	 * @param nrPegs
+	 *            The number of pegs in the code space.
+	 * @param nrColors
+	 *            The number of colors in the code space.
+	 * @param feedbackOrdinal
+	 *            The ordinal of the feedback given for the guess.
+	 */
+	public void retainFeedback(long guess, int nrPegs, int nrColors,
+			int feedbackOrdinal)
+	{
+		FeedbackSpace feedbackSpace = FeedbackSpace.forPegs(nrPegs);
+		boolean useHistograms = nrPegs <= PackedCode.MAX_HISTOGRAM_PEGS;
+		long guessHistogram = useHistograms ? PackedCode.colorHistogram(guess,
+				nrPegs) : 0L;
+		for (int i = 0; i < words.length; i++)
+		{
+			long word = words[i];
+			long mask = 0L;
+			while (word != 0)
+			{
+				int bit = Long.numberOfTrailingZeros(word);
+				long code = PackedCode.unrank((i << WORD_SHIFT) + bit, nrPegs,
+						nrColors);
+				int feedbackCode = useHistograms ? PackedCode.score(code, guess,
+						nrPegs, PackedCode.colorHistogram(code, nrPegs),
+						guessHistogram) : PackedCode.score(code, guess, nrPegs);
+				if (feedbackSpace.ordinalOfCode(feedbackCode) == feedbackOrdinal)
+					mask |= 1L << bit;
+				word &= word - 1;
+			}
+			words[i] &= mask;
+		}
+	}
+
+	/**
+	 *
+	 * @return The number of codes in the space.
+	 */
+	public int getSpaceSize()
+	{
+		return spaceSize;
+	}
+}
@@ -0,0 +1,167 @@
+package data;
+
+/**
+ * A CodeBatch holds many packed codes in a struct-of-arrays layout for batch
+ * scoring (see BatchFeedbackKernel): one byte column per peg holding the peg
+ * colors, and one byte column per color holding how often the color appears
+ * in each code. Colors are stored as in PackedCode, starting from zero.
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ *
+ */
+public class CodeBatch
+{
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private final int nrPegs;
+	private final int nrColors;
+	private byte[][] pegColumns;
+	private byte[][] colorCountColumns;
+	private int size;
+
+	/**
+	 * Constructs an empty batch.
+	 *
+	 * @param nrPegs
+	 *            The number of pegs in each code.
+	 * @param nrColors
+	 *            The number of colors in the code space.
+	 */
+	public CodeBatch(int nrPegs, int nrColors)
+	{
+		this(nrPegs, nrColors, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructs an empty batch with room for a number of codes.
+	 *
+	 * @param nrPegs
+	 *            The number of pegs in each code.
+	 * @param nrColors
+	 *            The number of colors in the code space.
+	 * @param capacity
+	 *            The number of codes to make room for.
+	 */
+	public CodeBatch(int nrPegs, int nrColors, int capacity)
+	{
+		if (!PackedCode.isPackable(nrPegs, nrColors))
+			throw new IllegalArgumentException("Cannot pack " + nrPegs
+					+ " pegs with " + nrColors + " colors");
+
+		this.nrPegs = nrPegs;
+		this.nrColors = nrColors;
+		pegColumns = new byte[nrPegs][Math.max(1, capacity)];
+		colorCountColumns = new byte[nrColors][Math.max(1, capacity)];
+	}
+
+	/**
+	 * Constructs a batch holding the given codes.
+	 *
+	 * @param nrPegs
+	 * @param nrColors
+	 * @param codes
+	 *            The packed codes.
+	 */
+	public CodeBatch(int nrPegs, int nrColors, long[] codes)
+	{
+		this(nrPegs, nrColors, codes.length);
+		for (int i = 0; i < codes.length; i++)
+			add(codes[i]);
+	}
+
+	/**
+	 * Appends a code to the batch.
+	 *
+	 * @param code
+	 *            The packed code.
+	 */
+	public void add(long code)
+	{
+		if (size == pegColumns[0].length)
+			grow();
+
+		for (int p = 0; p < nrPegs; p++)
+		{
+			int color = PackedCode.pegAt(code, p) - 1;
+			pegColumns[p][size] = (byte) color;
+			colorCountColumns[color][size]++;
+		}
+		size++;
+	}
+
+	/**
+	 * Empties the batch, keeping its capacity.
+	 */
+	public void clear()
+	{
+		for (int c = 0; c < nrColors; c++)
+			for (int i = 0; i < size; i++)
+				colorCountColumns[c][i] = 0;
+		size = 0;
+	}
+
+	/**
+	 *
+	 * @return The number of codes in the batch.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 *
+	 * @return The number of pegs in each code.
+	 */
+	public int getNrPegs()
+	{
+		return nrPegs;
+	}
+
+	/**
+	 *
+	 * @return The number of colors in the code space.
+	 */
+	public int getNrColors()
+	{
+		return nrColors;
+	}
+
+	/**
+	 *
+	 * @param pegNr
+	 * @return The colors of one peg for every code, at least size() long.
+	 */
+	byte[] getPegColumn(int pegNr)
+	{
+		return pegColumns[pegNr];
+	}
+
+	/**
+	 *
+	 * @param color
+	 *            A color starting from zero.
+	 * @return How often the color appears in every code, at least size()
+	 *         long.
+	 */
+	byte[] getColorCountColumn(int color)
+	{
+		return colorCountColumns[color];
+	}
+
+	private void grow()
+	{
+		int capacity = pegColumns[0].length * 2;
+		for (int p = 0; p < nrPegs; p++)
+			pegColumns[p] = copyOf(pegColumns[p], capacity);
+		for (int c = 0; c < nrColors; c++)
+			colorCountColumns[c] = copyOf(colorCountColumns[c], capacity);
+	}
+
+	private static byte[] copyOf(byte[] column, int capacity)
+	{
+		byte[] copy = new byte[capacity];
+		System.arraycopy(column, 0, copy, 0, column.length);
+		return copy;
+	}
+}
@@ -1,8 +1,9 @@
 package data;
 
 /**
- * A CodeSequence acts as a guess for the Mastermind game. It contains an array
- * of pegs using numbers mapped to the color space.
+ * A CodeSequence acts as a guess for the Mastermind game. It is a view over a
+ * packed code (see PackedCode) using numbers mapped to the color space. Codes
+ * that are too large to be packed keep their pegs in an array instead.
  * 
  * @author M. Curtis, M. Edoror and B. Farrington
  * 
@@ -11,7 +12,10 @@ public class CodeSequence
 {
 	protected static final int INVALID_PEG_COLOR = -1;
 
-	private int[] pegs;
+	private final int nrPegs;
+	private final long packed;
+	private final long colorHistogram;
+	private final int[] pegs;
 
 	/**
 	 * Constructs a CodeSequence, using an integer array for initializing
@@ -22,8 +26,36 @@ public class CodeSequence
 	 */
 	public CodeSequence(int[] pegs)
 	{
-		this.pegs = new int[pegs.length];
-		System.arraycopy(pegs, 0, this.pegs, 0, pegs.length);
+		this.nrPegs = pegs.length;
+		if (canPack(pegs))
+		{
+			this.packed = PackedCode.pack(pegs);
+			this.colorHistogram = histogramOf(packed, nrPegs);
+			this.pegs = null;
+		}
+		else
+		{
+			this.packed = 0L;
+			this.colorHistogram = 0L;
+			this.pegs = new int[pegs.length];
+			System.arraycopy(pegs, 0, this.pegs, 0, pegs.length);
+		}
+	}
+
+	/**
+	 * Constructs a CodeSequence from a packed code.
+	 * 
+	 * @param packed
+	 *            The packed code.
+	 * @param nrPegs
+	 *            The number of pegs in the code.
+	 */
+	public CodeSequence(long packed, int nrPegs)
+	{
+		this.nrPegs = nrPegs;
+		this.packed = packed & PackedCode.pegMask(nrPegs);
+		this.colorHistogram = histogramOf(this.packed, nrPegs);
+		this.pegs = null;
 	}
 
 	/**
@@ -31,24 +63,56 @@ public class CodeSequence
 	 * @param codeSequence
 	 *            Using the codeSequence as a guess, get the feedback in terms
 	 *            of black and white.
-	 * @return A feedback object with the amount of blacks and whites for the
-	 *         given guess.
+	 * @return The interned feedback (see FeedbackSpace) with the amount of
+	 *         blacks and whites for the given guess.
 	 */
 	public Feedback getFeedbackFor(CodeSequence codeSequence)
 	{
-		if (codeSequence.pegs.length != pegs.length)
+		if (codeSequence.nrPegs != nrPegs)
 			return null;
 
+		return FeedbackSpace.forPegs(nrPegs).forCode(
+				getFeedbackCodeFor(codeSequence));
+	}
+
+	/**
+	 * 
+	 * @param codeSequence
+	 *            The guess to score, which must have the same number of pegs.
+	 * @return The ordinal of the feedback in the FeedbackSpace for this number
+	 *         of pegs.
+	 */
+	public int getFeedbackOrdinalFor(CodeSequence codeSequence)
+	{
+		return FeedbackSpace.forPegs(nrPegs).ordinalOfCode(
+				getFeedbackCodeFor(codeSequence));
+	}
+
+	/**
+	 * Scores the given guess against this code without creating any objects
+	 * when both codes are packed.
+	 * 
+	 * @param codeSequence
+	 *            The guess to score, which must have the same number of pegs.
+	 * @return The primitive feedback code (see PackedCode) for the guess.
+	 */
+	public int getFeedbackCodeFor(CodeSequence codeSequence)
+	{
+		if (pegs == null && codeSequence.pegs == null)
+		{
+			if (nrPegs <= PackedCode.MAX_HISTOGRAM_PEGS)
+				return PackedCode.score(packed, codeSequence.packed, nrPegs,
+						colorHistogram, codeSequence.colorHistogram);
+			return PackedCode.score(packed, codeSequence.packed, nrPegs);
+		}
+
 		int white = 0;
 		int black = 0;
 
-		int[] checkedArgumentPegs = new int[pegs.length];
-		int[] checkedPegs = new int[pegs.length];
-		System.arraycopy(codeSequence.pegs, 0, checkedArgumentPegs, 0,
-				pegs.length);
-		System.arraycopy(pegs, 0, checkedPegs, 0, pegs.length);
+		int[] checkedArgumentPegs = codeSequence.toArray();
+		int[] checkedPegs = toArray();
 
-		for (int i = 0; i < pegs.length; i++)
+		for (int i = 0; i < nrPegs; i++)
 			if (checkedPegs[i] == checkedArgumentPegs[i])
 			{
 				checkedPegs[i] = INVALID_PEG_COLOR;
@@ -56,8 +120,8 @@ public class CodeSequence
 				black++;
 			}
 
-		for (int i = 0; i < pegs.length; i++)
-			for (int j = 0; j < pegs.length; j++)
+		for (int i = 0; i < nrPegs; i++)
+			for (int j = 0; j < nrPegs; j++)
 				if (checkedPegs[i] == checkedArgumentPegs[j])
 				{
 					checkedPegs[i] = INVALID_PEG_COLOR;
@@ -65,7 +129,7 @@ public class CodeSequence
 					white++;
 				}
 
-		return new Feedback(white, black);
+		return PackedCode.toFeedbackCode(black, white);
 	}
 
 	/**
@@ -74,7 +138,7 @@ public class CodeSequence
 	 */
 	public int getNrPegs()
 	{
-		return pegs.length;
+		return nrPegs;
 	}
 
 	/**
@@ -85,9 +149,53 @@ public class CodeSequence
 	 */
 	public int getPegColorAt(int pegNr)
 	{
-		if (pegNr < 0 || pegNr >= pegs.length)
+		if (pegNr < 0 || pegNr >= nrPegs)
 			return INVALID_PEG_COLOR;
-		return pegs[pegNr];
+		if (pegs != null)
+			return pegs[pegNr];
+		return PackedCode.pegAt(packed, pegNr);
+	}
+
+	/**
+	 * 
+	 * @return True if this sequence is backed by a packed code.
+	 */
+	public boolean isPacked()
+	{
+		return pegs == null;
+	}
+
+	/**
+	 * 
+	 * @return The packed code, only meaningful if isPacked() is true.
+	 */
+	public long getPacked()
+	{
+		return packed;
+	}
+
+	/**
+	 * 
+	 * @return The color histogram of the packed code (see PackedCode), only
+	 *         meaningful if isPacked() is true and there are at most
+	 *         PackedCode.MAX_HISTOGRAM_PEGS pegs.
+	 */
+	public long getColorHistogram()
+	{
+		return colorHistogram;
+	}
+
+	/**
+	 * 
+	 * @return A new array holding the colors of the pegs.
+	 */
+	public int[] toArray()
+	{
+		if (pegs == null)
+			return PackedCode.unpack(packed, nrPegs);
+		int[] copy = new int[nrPegs];
+		System.arraycopy(pegs, 0, copy, 0, nrPegs);
+		return copy;
 	}
 
 	/**
@@ -101,12 +209,26 @@ public class CodeSequence
 			return false;
 		CodeSequence otherGuess = (CodeSequence) obj;
 
-		for (int i = 0; i < pegs.length; i++)
-			if (pegs[i] != otherGuess.pegs[i])
+		if (pegs == null && otherGuess.pegs == null)
+			return packed == otherGuess.packed;
+
+		for (int i = 0; i < nrPegs; i++)
+			if (getPegColorAt(i) != otherGuess.getPegColorAt(i))
 				return false;
 		return true;
 	}
 
+	/**
+	 * Overridden hash code, consistent with equals.
+	 */
+	public int hashCode()
+	{
+		int hash = 0;
+		for (int i = 0; i < nrPegs; i++)
+			hash = hash * 31 + getPegColorAt(i);
+		return hash;
+	}
+
 	/**
 	 * Overridden method for displaying a CodeSequence's important properties.
 	 * 
@@ -114,9 +236,40 @@ public class CodeSequence
 	public String toString()
 	{
 		String returnString = "";
-		for (int i = 0; i < pegs.length - 1; i++)
-			returnString += pegs[i] + " ";
-		return returnString + pegs[pegs.length - 1];
+		for (int i = 0; i < nrPegs - 1; i++)
+			returnString += getPegColorAt(i) + " ";
+		return returnString + getPegColorAt(nrPegs - 1);
+	}
+
+	/**
+	 * Computes the color histogram once, when the code is small enough to
+	 * have one.
+	 * 
+	 * @param packed
+	 * @param nrPegs
+	 * @return
+	 */
+	private static long histogramOf(long packed, int nrPegs)
+	{
+		if (nrPegs > PackedCode.MAX_HISTOGRAM_PEGS)
+			return 0L;
+		return PackedCode.colorHistogram(packed, nrPegs);
+	}
+
+	/**
+	 * Checks whether the given pegs fit in a packed code.
+	 * 
+	 * @param pegs
+	 * @return
+	 */
+	private static boolean canPack(int[] pegs)
+	{
+		if (pegs.length == 0 || pegs.length > PackedCode.MAX_PEGS)
+			return false;
+		for (int i = 0; i < pegs.length; i++)
+			if (pegs[i] < 1 || pegs[i] > PackedCode.MAX_COLORS)
+				return false;
+		return true;
 	}
 
 }
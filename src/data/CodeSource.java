@@ -0,0 +1,43 @@
+package data;
+
+import java.io.IOException;
+
+/**
+ * A source of secret codes read from a file one at a time, so a file of any
+ * length is played in constant memory.
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ *
+ */
+public interface CodeSource
+{
+	/**
+	 *
+	 * @return The number of pegs of the codes.
+	 */
+	public int getNrPegs();
+
+	/**
+	 *
+	 * @return The number of colors of the codes.
+	 */
+	public int getNrColors();
+
+	/**
+	 * Takes the next code. Several threads may take codes from the same
+	 * source.
+	 *
+	 * @return The code, or null if there are none left.
+	 * @throws IOException
+	 *             If the file cannot be read or holds something other than a
+	 *             code.
+	 */
+	public CodeSequence next() throws IOException;
+
+	/**
+	 * Releases the file.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException;
+}
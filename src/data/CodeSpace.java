@@ -0,0 +1,154 @@
+package data;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A CodeSpace describes every code for a number of pegs and colors without
+ * holding them. Codes are identified by their mixed-radix rank and produced on
+ * demand, either one at a time or streamed through a CodeSpliterator. A code
+ * space is immutable, so one instance per size is shared by the whole JVM.
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ *
+ */
+public class CodeSpace
+{
+	private static final ConcurrentHashMap<Integer, CodeSpace> spaces = new ConcurrentHashMap<Integer, CodeSpace>();
+
+	private final int nrPegs;
+	private final int nrColors;
+	private final long size;
+
+	/**
+	 * Returns the canonical code space for the given number of pegs and
+	 * colors.
+	 *
+	 * @param nrPegs
+	 * @param nrColors
+	 * @return The shared code space.
+	 * @throws IllegalArgumentException
+	 *             If the codes cannot be packed or counted.
+	 */
+	public static CodeSpace forSpace(int nrPegs, int nrColors)
+	{
+		if (!PackedCode.isPackable(nrPegs, nrColors)
+				|| PackedCode.spaceSize(nrPegs, nrColors) < 0)
+			throw new IllegalArgumentException("Cannot enumerate " + nrPegs
+					+ " pegs with " + nrColors + " colors");
+
+		Integer key = nrPegs * (PackedCode.MAX_COLORS + 1) + nrColors;
+		CodeSpace space = spaces.get(key);
+		if (space == null)
+		{
+			spaces.putIfAbsent(key, new CodeSpace(nrPegs, nrColors));
+			space = spaces.get(key);
+		}
+		return space;
+	}
+
+	/**
+	 * Constructs the code space for a number of pegs and colors.
+	 *
+	 * @param nrPegs
+	 * @param nrColors
+	 */
+	private CodeSpace(int nrPegs, int nrColors)
+	{
+		this.nrPegs = nrPegs;
+		this.nrColors = nrColors;
+		this.size = PackedCode.spaceSize(nrPegs, nrColors);
+	}
+
+	/**
+	 *
+	 * @return The number of pegs.
+	 */
+	public int getNrPegs()
+	{
+		return nrPegs;
+	}
+
+	/**
+	 *
+	 * @return The number of colors.
+	 */
+	public int getNrColors()
+	{
+		return nrColors;
+	}
+
+	/**
+	 *
+	 * @return The number of codes in the space.
+	 */
+	public long size()
+	{
+		return size;
+	}
+
+	/**
+	 *
+	 * @param rank
+	 * @return The packed code with the given rank.
+	 */
+	public long codeAt(long rank)
+	{
+		return PackedCode.unrank(rank, nrPegs, nrColors);
+	}
+
+	/**
+	 *
+	 * @param rank
+	 * @return A CodeSequence for the code with the given rank.
+	 */
+	public CodeSequence sequenceAt(long rank)
+	{
+		return new CodeSequence(codeAt(rank), nrPegs);
+	}
+
+	/**
+	 *
+	 * @param code
+	 *            A packed code.
+	 * @return The rank of the code.
+	 */
+	public long rankOf(long code)
+	{
+		return PackedCode.rank(code, nrPegs, nrColors);
+	}
+
+	/**
+	 *
+	 * @return A spliterator over the whole space.
+	 */
+	public CodeSpliterator spliterator()
+	{
+		return spliterator(0, size);
+	}
+
+	/**
+	 *
+	 * @param fromRank
+	 *            The first rank, inclusive.
+	 * @param toRank
+	 *            The last rank, exclusive.
+	 * @return A spliterator over a range of the space.
+	 */
+	public CodeSpliterator spliterator(long fromRank, long toRank)
+	{
+		return new CodeSpliterator(nrPegs, nrColors, fromRank, toRank);
+	}
+
+	/**
+	 *
+	 * @param parallel
+	 *            Whether the stream may be consumed in parallel.
+	 * @return A stream of the packed codes of the whole space, in rank order.
+	 */
+	public LongStream stream(boolean parallel)
+	{
+		return StreamSupport.longStream(spliterator(), parallel);
+	}
+}
@@ -0,0 +1,122 @@
+package data;
+
+import java.util.Spliterator;
+import java.util.function.LongConsumer;
+
+/**
+ * A CodeSpliterator yields the packed codes (see PackedCode) of a range of
+ * ranks in a code space, one at a time and in rank order. The next code is
+ * found by stepping the previous one like an odometer, so nothing but the
+ * current code is held, and the range can be split in halves for parallel
+ * consumption.
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ *
+ */
+public class CodeSpliterator implements Spliterator.OfLong
+{
+	private static final int BITS_PER_PEG = 4;
+	private static final long PEG_MASK = 0xFL;
+
+	private final int nrPegs;
+	private final int nrColors;
+	private long rank;
+	private final long endRank;
+	private long code;
+
+	/**
+	 * Constructs a spliterator over a range of ranks.
+	 *
+	 * @param nrPegs
+	 *            The number of pegs in the code space.
+	 * @param nrColors
+	 *            The number of colors in the code space.
+	 * @param fromRank
+	 *            The first rank, inclusive.
+	 * @param toRank
+	 *            The last rank, exclusive.
+	 */
+	public CodeSpliterator(int nrPegs, int nrColors, long fromRank, long toRank)
+	{
+		this.nrPegs = nrPegs;
+		this.nrColors = nrColors;
+		this.rank = fromRank;
+		this.endRank = toRank;
+		this.code = PackedCode.unrank(fromRank, nrPegs, nrColors);
+	}
+
+	/**
+	 *
+	 * @return The rank of the next code to be yielded.
+	 */
+	public long getNextRank()
+	{
+		return rank;
+	}
+
+	public boolean tryAdvance(LongConsumer action)
+	{
+		if (rank >= endRank)
+			return false;
+		action.accept(code);
+		rank++;
+		code = step(code);
+		return true;
+	}
+
+	public void forEachRemaining(LongConsumer action)
+	{
+		long currentCode = code;
+		for (long currentRank = rank; currentRank < endRank; currentRank++)
+		{
+			action.accept(currentCode);
+			currentCode = step(currentCode);
+		}
+		rank = endRank;
+		code = currentCode;
+	}
+
+	/**
+	 * Hands the lower half of the remaining ranks to a new spliterator.
+	 */
+	public CodeSpliterator trySplit()
+	{
+		long middle = rank + ((endRank - rank) >>> 1);
+		if (middle <= rank)
+			return null;
+
+		CodeSpliterator lowerHalf = new CodeSpliterator(nrPegs, nrColors,
+				rank, middle);
+		rank = middle;
+		code = PackedCode.unrank(middle, nrPegs, nrColors);
+		return lowerHalf;
+	}
+
+	public long estimateSize()
+	{
+		return endRank - rank;
+	}
+
+	public int characteristics()
+	{
+		return ORDERED | DISTINCT | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+	}
+
+	/**
+	 * Finds the code with the next rank, the last peg changing fastest.
+	 *
+	 * @param code
+	 * @return
+	 */
+	private long step(long code)
+	{
+		for (int i = nrPegs - 1; i >= 0; i--)
+		{
+			int shift = i * BITS_PER_PEG;
+			if (((code >>> shift) & PEG_MASK) != nrColors - 1)
+				return code + (1L << shift);
+			code &= ~(PEG_MASK << shift);
+		}
+		return code;
+	}
+}
@@ -1,7 +1,6 @@
 package data;
 
 import java.util.ArrayList;
-import java.util.Random;
 
 /**
  * A ColorSpace holds all possible colors. It can be reduced to give a more
@@ -62,7 +61,7 @@ public class ColorSpace
 	 */
 	public int getRandomColor()
 	{
-		return colors.get(new Random().nextInt(colors.size()));
+		return colors.get(RandomSource.nextInt(colors.size()));
 	}
 
 	/**
@@ -0,0 +1,36 @@
+package data;
+
+/**
+ * A feedback table held entirely on the heap as a single byte matrix.
+ * 
+ * @author M. Curtis, M. Edoror and B. Farrington
+ * 
+ */
+class DenseFeedbackTable extends FeedbackTable
+{
+	private final byte[] ordinals;
+
+	/**
+	 * Builds the whole table.
+	 * 
+	 * @param nrPegs
+	 * @param nrColors
+	 */
+	DenseFeedbackTable(int nrPegs, int nrColors)
+	{
+		super(nrPegs, nrColors);
+		ordinals = new byte[spaceSize * spaceSize];
+
+		byte[] row = new byte[spaceSize];
+		for (int guessRank = 0; guessRank < spaceSize; guessRank++)
+		{
+			computeRow(nrPegs, nrColors, guessRank, row);
+			System.arraycopy(row, 0, ordinals, guessRank * spaceSize, spaceSize);
+		}
+	}
+
+	public int getFeedbackOrdinal(int guessRank, int codeRank)
+	{
+		return ordinals[guessRank * spaceSize + codeRank] & 0xFF;
+	}
+}
@@ -14,6 +14,7 @@ public class Feedback
 
 	private int white;
 	private int black;
+	private int ordinal;
 
 	/**
 	 * Constructs a feedback with a specific number of blacks and whites.
@@ -24,9 +25,25 @@ public class Feedback
 	 *            Number of blacks.
 	 */
 	public Feedback(int white, int black)
+	{
+		this(white, black, -1);
+	}
+
+	/**
+	 * Constructs an interned feedback, used by FeedbackSpace.
+	 * 
+	 * @param white
+	 *            Number of whites.
+	 * @param black
+	 *            Number of blacks.
+	 * @param ordinal
+	 *            The dense ordinal of this feedback in its FeedbackSpace.
+	 */
+	Feedback(int white, int black, int ordinal)
 	{
 		this.white = white;
 		this.black = black;
+		this.ordinal = ordinal;
 	}
 
 	/**
@@ -47,6 +64,16 @@ public class Feedback
 		return black;
 	}
 
+	/**
+	 * 
+	 * @return The ordinal of this feedback in its FeedbackSpace, or -1 if it
+	 *         was not obtained from one.
+	 */
+	public int getOrdinal()
+	{
+		return ordinal;
+	}
+
 	/**
 	 * Return the number of both blacks and whites.
 	 * 
@@ -83,6 +110,14 @@ public class Feedback
 		return white == otherScore.white && black == otherScore.black;
 	}
 
+	/**
+	 * Overridden hash code, consistent with equals.
+	 */
+	public int hashCode()
+	{
+		return PackedCode.toFeedbackCode(black, white);
+	}
+
 	/**
 	 * Overridden method that displays the number of blacks and whites for this
 	 * feedback.
@@ -0,0 +1,180 @@
+package data;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A FeedbackSpace holds every valid feedback for a given number of pegs. Each
+ * feedback is built once and given a dense ordinal, so scoring can hand out
+ * the same interned instance every time and callers can count feedbacks in
+ * plain integer arrays indexed by ordinal.
+ * 
+ * The ordinals follow the order of increasing whites, then increasing blacks,
+ * which is the order the Knuth guesser has always used.
+ * 
+ * @author M. Curtis, M. Edoror and B. Farrington
+ * 
+ */
+public final class FeedbackSpace
+{
+	private static final int MAX_CACHED_PEGS = 64;
+	private static final AtomicReferenceArray<FeedbackSpace> spaces = new AtomicReferenceArray<FeedbackSpace>(
+			MAX_CACHED_PEGS + 1);
+	private static final ConcurrentHashMap<Integer, FeedbackSpace> largeSpaces = new ConcurrentHashMap<Integer, FeedbackSpace>();
+
+	private final int nrPegs;
+	private final Feedback[] feedbacks;
+	private final int[] ordinalsByBlackAndWhite;
+
+	/**
+	 * Returns the canonical feedback space for the given number of pegs.
+	 * 
+	 * @param nrPegs
+	 *            The number of pegs in the game.
+	 * @return The shared feedback space.
+	 */
+	public static FeedbackSpace forPegs(int nrPegs)
+	{
+		if (nrPegs <= MAX_CACHED_PEGS)
+		{
+			FeedbackSpace space = spaces.get(nrPegs);
+			if (space == null)
+			{
+				spaces.compareAndSet(nrPegs, null, new FeedbackSpace(nrPegs));
+				space = spaces.get(nrPegs);
+			}
+			return space;
+		}
+
+		FeedbackSpace space = largeSpaces.get(nrPegs);
+		if (space == null)
+		{
+			largeSpaces.putIfAbsent(nrPegs, new FeedbackSpace(nrPegs));
+			space = largeSpaces.get(nrPegs);
+		}
+		return space;
+	}
+
+	/**
+	 * Enumerates the feedback space.
+	 * 
+	 * @param nrPegs
+	 */
+	private FeedbackSpace(int nrPegs)
+	{
+		if (nrPegs <= 0)
+			throw new IllegalArgumentException("Invalid number of pegs: "
+					+ nrPegs);
+
+		this.nrPegs = nrPegs;
+		ordinalsByBlackAndWhite = new int[(nrPegs + 1) * (nrPegs + 1)];
+		for (int i = 0; i < ordinalsByBlackAndWhite.length; i++)
+			ordinalsByBlackAndWhite[i] = -1;
+
+		// Every pair with black + white <= pegs is possible except for all
+		// but one peg being black and the last one white
+		feedbacks = new Feedback[(nrPegs + 1) * (nrPegs + 2) / 2 - 1];
+		int ordinal = 0;
+		for (int white = 0; white <= nrPegs; white++)
+			for (int black = 0; black + white <= nrPegs; black++)
+			{
+				if (black == nrPegs - 1 && white == 1)
+					continue;
+				feedbacks[ordinal] = new Feedback(white, black, ordinal);
+				ordinalsByBlackAndWhite[black * (nrPegs + 1) + white] = ordinal;
+				ordinal++;
+			}
+	}
+
+	/**
+	 * 
+	 * @return The number of pegs this space is for.
+	 */
+	public int getNrPegs()
+	{
+		return nrPegs;
+	}
+
+	/**
+	 * 
+	 * @return The number of distinct feedbacks.
+	 */
+	public int size()
+	{
+		return feedbacks.length;
+	}
+
+	/**
+	 * 
+	 * @param ordinal
+	 *            The ordinal of the feedback.
+	 * @return The interned feedback.
+	 */
+	public Feedback get(int ordinal)
+	{
+		return feedbacks[ordinal];
+	}
+
+	/**
+	 * 
+	 * @param black
+	 *            Number of blacks.
+	 * @param white
+	 *            Number of whites.
+	 * @return The ordinal of the feedback, or -1 if it is not possible.
+	 */
+	public int ordinalOf(int black, int white)
+	{
+		if (black < 0 || white < 0 || black + white > nrPegs)
+			return -1;
+		return ordinalsByBlackAndWhite[black * (nrPegs + 1) + white];
+	}
+
+	/**
+	 * 
+	 * @param feedbackCode
+	 *            A primitive feedback code (see PackedCode).
+	 * @return The ordinal of the feedback.
+	 */
+	public int ordinalOfCode(int feedbackCode)
+	{
+		return ordinalOf(PackedCode.blackOf(feedbackCode),
+				PackedCode.whiteOf(feedbackCode));
+	}
+
+	/**
+	 * 
+	 * @param feedbackCode
+	 *            A primitive feedback code (see PackedCode).
+	 * @return The interned feedback.
+	 */
+	public Feedback forCode(int feedbackCode)
+	{
+		return feedbacks[ordinalOfCode(feedbackCode)];
+	}
+
+	/**
+	 * Returns the interned instance equal to the given feedback.
+	 * 
+	 * @param feedback
+	 *            Any feedback for this number of pegs.
+	 * @return The interned feedback.
+	 */
+	public Feedback intern(Feedback feedback)
+	{
+		int ordinal = ordinalOf(feedback.getBlack(), feedback.getWhite());
+		if (ordinal < 0)
+			throw new IllegalArgumentException("Feedback " + feedback
+					+ " is not possible with " + nrPegs + " pegs");
+		return feedbacks[ordinal];
+	}
+
+	/**
+	 * 
+	 * @return The ordinal of the feedback with all pegs black.
+	 */
+	public int winningOrdinal()
+	{
+		return ordinalOf(nrPegs, 0);
+	}
+}
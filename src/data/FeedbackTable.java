@@ -0,0 +1,176 @@
+package data;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * A FeedbackTable holds the precomputed feedback ordinal (see FeedbackSpace)
+ * for every pair of codes in a (pegs, colors) code space, indexed by the
+ * mixed-radix ranks of the guess and the code (see PackedCode). Small spaces
+ * are kept in a byte matrix on the heap, larger ones in a file which is
+ * memory-mapped and reused by later runs. Tables are built once per JVM and
+ * shared by every guesser.
+ * 
+ * @author M. Curtis, M. Edoror and B. Farrington
+ * 
+ */
+public abstract class FeedbackTable
+{
+	/**
+	 * The largest number of entries kept on the heap (64 MB).
+	 */
+	public static final long MAX_DENSE_ENTRIES = 1L << 26;
+
+	/**
+	 * The largest number of entries kept in a mapped file (4 GB).
+	 */
+	public static final long MAX_MAPPED_ENTRIES = 1L << 32;
+
+	/**
+	 * The largest code space tabulated, whose square is MAX_MAPPED_ENTRIES.
+	 */
+	private static final long MAX_TABULATED_SPACE_SIZE = 1L << 16;
+
+	/**
+	 * System property naming the directory that holds the mapped tables.
+	 */
+	public static final String TABLE_DIR_PROPERTY = "mastermind.tables";
+
+	private static final HashMap<Integer, FeedbackTable> tables = new HashMap<Integer, FeedbackTable>();
+
+	protected final int nrPegs;
+	protected final int nrColors;
+	protected final int spaceSize;
+
+	/**
+	 * Returns the shared table for a code space, building it if needed.
+	 * 
+	 * @param nrPegs
+	 *            The number of pegs in the game.
+	 * @param nrColors
+	 *            The number of colors in the game.
+	 * @return The table, or null if the space is too large to tabulate or the
+	 *         table file could not be used.
+	 */
+	public static synchronized FeedbackTable forSpace(int nrPegs, int nrColors)
+	{
+		if (!PackedCode.isPackable(nrPegs, nrColors))
+			return null;
+
+		// Bounding the space first keeps its square from overflowing
+		long spaceSize = PackedCode.spaceSize(nrPegs, nrColors);
+		if (spaceSize < 0 || spaceSize > MAX_TABULATED_SPACE_SIZE
+				|| spaceSize * spaceSize > MAX_MAPPED_ENTRIES)
+			return null;
+
+		Integer key = nrPegs * (PackedCode.MAX_COLORS + 1) + nrColors;
+		FeedbackTable table = tables.get(key);
+		if (table != null)
+			return table;
+
+		if (spaceSize * spaceSize <= MAX_DENSE_ENTRIES)
+			table = new DenseFeedbackTable(nrPegs, nrColors);
+		else
+		{
+			try
+			{
+				table = MappedFeedbackTable.open(getTableDirectory(), nrPegs,
+						nrColors);
+			}
+			catch (IOException e)
+			{
+				System.err.println("Cannot use feedback table for " + nrPegs
+						+ " pegs and " + nrColors + " colors: " + e.getMessage());
+				return null;
+			}
+		}
+
+		tables.put(key, table);
+		return table;
+	}
+
+	/**
+	 * 
+	 * @return The directory in which mapped tables are stored.
+	 */
+	public static File getTableDirectory()
+	{
+		String dir = System.getProperty(TABLE_DIR_PROPERTY);
+		if (dir == null)
+			return new File(System.getProperty("java.io.tmpdir"),
+					"mastermind-tables");
+		return new File(dir);
+	}
+
+	/**
+	 * 
+	 * @param nrPegs
+	 * @param nrColors
+	 */
+	protected FeedbackTable(int nrPegs, int nrColors)
+	{
+		this.nrPegs = nrPegs;
+		this.nrColors = nrColors;
+		this.spaceSize = (int) PackedCode.spaceSize(nrPegs, nrColors);
+	}
+
+	/**
+	 * 
+	 * @param guessRank
+	 *            The rank of the guess.
+	 * @param codeRank
+	 *            The rank of the code being guessed.
+	 * @return The ordinal of the feedback for the guess.
+	 */
+	public abstract int getFeedbackOrdinal(int guessRank, int codeRank);
+
+	/**
+	 * 
+	 * @return The number of pegs.
+	 */
+	public int getNrPegs()
+	{
+		return nrPegs;
+	}
+
+	/**
+	 * 
+	 * @return The number of colors.
+	 */
+	public int getNrColors()
+	{
+		return nrColors;
+	}
+
+	/**
+	 * 
+	 * @return The number of codes in the space.
+	 */
+	public int getSpaceSize()
+	{
+		return spaceSize;
+	}
+
+	/**
+	 * Computes one row of the table, the ordinals of a guess against every
+	 * code in rank order.
+	 * 
+	 * @param nrPegs
+	 * @param nrColors
+	 * @param guessRank
+	 *            The rank of the guess.
+	 * @param row
+	 *            The array to fill, with one entry per code.
+	 */
+	static void computeRow(int nrPegs, int nrColors, int guessRank,
+			byte[] row)
+	{
+		int spaceSize = row.length;
+		FeedbackSpace feedbackSpace = FeedbackSpace.forPegs(nrPegs);
+		long guess = PackedCode.unrank(guessRank, nrPegs, nrColors);
+		for (int codeRank = 0; codeRank < spaceSize; codeRank++)
+			row[codeRank] = (byte) feedbackSpace.ordinalOfCode(PackedCode.score(
+					PackedCode.unrank(codeRank, nrPegs, nrColors), guess, nrPegs));
+	}
+}
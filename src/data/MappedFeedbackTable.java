@@ -0,0 +1,185 @@
+package data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A feedback table stored in a file and memory-mapped through NIO. The file
+ * starts with a small header identifying the code space, followed by the
+ * ordinals row by row in guess rank order. Since a single mapping cannot
+ * exceed 2 GB, the rows are mapped in several chunks. A missing or mismatched
+ * file is rebuilt through an AtomicFileWriter, so a run that is interrupted
+ * never leaves a partial table behind.
+ * 
+ * @author M. Curtis, M. Edoror and B. Farrington
+ * 
+ */
+class MappedFeedbackTable extends FeedbackTable
+{
+	private static final int MAGIC = 0x4D4D4654; // "MMFT"
+	private static final int HEADER_SIZE = 16;
+	private static final int MAX_CHUNK_SIZE = 1 << 30;
+
+	private final int rowsPerChunk;
+	private final MappedByteBuffer[] chunks;
+
+	/**
+	 * Maps the table for a code space, building the file first if needed.
+	 * 
+	 * @param directory
+	 *            The directory holding the table files.
+	 * @param nrPegs
+	 * @param nrColors
+	 * @return The mapped table.
+	 * @throws IOException
+	 */
+	static MappedFeedbackTable open(File directory, final int nrPegs,
+			final int nrColors) throws IOException
+	{
+		File file = new File(directory, "feedback-" + nrPegs + "x" + nrColors
+				+ ".tbl");
+		if (!hasValidHeader(file, nrPegs, nrColors))
+			new AtomicFileWriter()
+			{
+				protected void write(File tempFile) throws IOException
+				{
+					build(tempFile, nrPegs, nrColors);
+				}
+			}.writeTo(directory, file);
+		return new MappedFeedbackTable(file, nrPegs, nrColors);
+	}
+
+	/**
+	 * Maps an existing table file as read only.
+	 * 
+	 * @param file
+	 * @param nrPegs
+	 * @param nrColors
+	 * @throws IOException
+	 */
+	private MappedFeedbackTable(File file, int nrPegs, int nrColors)
+			throws IOException
+	{
+		super(nrPegs, nrColors);
+		rowsPerChunk = rowsPerChunk(spaceSize);
+		chunks = new MappedByteBuffer[(spaceSize + rowsPerChunk - 1)
+				/ rowsPerChunk];
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			for (int i = 0; i < chunks.length; i++)
+				chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+						chunkOffset(i), chunkSize(i));
+		}
+		finally
+		{
+			// The mappings stay valid after the channel is closed
+			raf.close();
+		}
+	}
+
+	public int getFeedbackOrdinal(int guessRank, int codeRank)
+	{
+		int chunk = guessRank / rowsPerChunk;
+		int offset = (guessRank - chunk * rowsPerChunk) * spaceSize + codeRank;
+		return chunks[chunk].get(offset) & 0xFF;
+	}
+
+	/**
+	 * Writes a complete table file.
+	 * 
+	 * @param file
+	 * @param nrPegs
+	 * @param nrColors
+	 * @throws IOException
+	 */
+	private static void build(File file, int nrPegs, int nrColors)
+			throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			int spaceSize = (int) PackedCode.spaceSize(nrPegs, nrColors);
+			int rowsPerChunk = rowsPerChunk(spaceSize);
+			byte[] row = new byte[spaceSize];
+
+			for (int guessRank = 0; guessRank < spaceSize; guessRank += rowsPerChunk)
+			{
+				int rows = Math.min(rowsPerChunk, spaceSize - guessRank);
+				MappedByteBuffer chunk = channel.map(
+						FileChannel.MapMode.READ_WRITE, HEADER_SIZE
+								+ (long) guessRank * spaceSize, (long) rows
+								* spaceSize);
+				for (int i = 0; i < rows; i++)
+				{
+					computeRow(nrPegs, nrColors, guessRank + i, row);
+					chunk.put(row);
+				}
+				chunk.force();
+			}
+
+			// The header goes in last so only complete tables are recognized
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(nrPegs).putInt(nrColors)
+					.putInt(spaceSize).flip();
+			channel.write(header, 0);
+			channel.force(true);
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	/**
+	 * 
+	 * @param file
+	 * @param nrPegs
+	 * @param nrColors
+	 * @return True if the file holds a complete table for the code space.
+	 * @throws IOException
+	 */
+	private static boolean hasValidHeader(File file, int nrPegs, int nrColors)
+			throws IOException
+	{
+		if (!file.isFile())
+			return false;
+
+		long spaceSize = PackedCode.spaceSize(nrPegs, nrColors);
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			if (raf.length() != HEADER_SIZE + spaceSize * spaceSize)
+				return false;
+			return raf.readInt() == MAGIC && raf.readInt() == nrPegs
+					&& raf.readInt() == nrColors && raf.readInt() == spaceSize;
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	private static int rowsPerChunk(int spaceSize)
+	{
+		return Math.max(1, MAX_CHUNK_SIZE / spaceSize);
+	}
+
+	private long chunkOffset(int chunk)
+	{
+		return HEADER_SIZE + (long) chunk * rowsPerChunk * spaceSize;
+	}
+
+	private long chunkSize(int chunk)
+	{
+		int rows = Math.min(rowsPerChunk, spaceSize - chunk * rowsPerChunk);
+		return (long) rows * spaceSize;
+	}
+}
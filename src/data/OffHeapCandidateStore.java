@@ -0,0 +1,446 @@
+package data;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.LongConsumer;
+
+/**
+ * An OffHeapCandidateStore holds the packed codes still consistent with every
+ * feedback in direct buffers, outside the garbage collected heap, so spaces of
+ * hundreds of millions of codes can be solved exactly. The store is split in
+ * fixed size chunks that are filtered in parallel, each compacting its
+ * survivors to its own start, after which the survivors of all chunks are
+ * moved down in order to close the gaps. Codes therefore stay in rank order.
+ * The chunks are filtered on the pool the store was built with, or on the
+ * calling thread without one.
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ *
+ */
+public class OffHeapCandidateStore
+{
+	public static final long MAX_ENUMERATED_SPACE_SIZE = 1L << 28;
+
+	private static final int CHUNK_SHIFT = 16;
+	private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	private static final int MAX_SEGMENT_SHIFT = 24;
+	private static final int BYTES_PER_CODE = 8;
+
+	private final int nrPegs;
+	private final int nrColors;
+	private final FeedbackSpace feedbackSpace;
+	private final int segmentShift;
+	private final ForkJoinPool pool;
+	private final ArrayList<LongBuffer> segments = new ArrayList<LongBuffer>();
+	private long size;
+
+	/**
+	 * Constructs an empty store for a code space.
+	 *
+	 * @param nrPegs
+	 * @param nrColors
+	 * @param pool
+	 */
+	private OffHeapCandidateStore(int nrPegs, int nrColors, ForkJoinPool pool)
+	{
+		this.nrPegs = nrPegs;
+		this.nrColors = nrColors;
+		this.pool = pool;
+		this.feedbackSpace = FeedbackSpace.forPegs(nrPegs);
+
+		long spaceSize = PackedCode.spaceSize(nrPegs, nrColors);
+		int shift = CHUNK_SHIFT;
+		while (shift < MAX_SEGMENT_SHIFT && (1L << shift) < spaceSize)
+			shift++;
+		this.segmentShift = shift;
+	}
+
+	/**
+	 *
+	 * @param nrPegs
+	 * @param nrColors
+	 * @return True if the code space is small enough to be walked in full
+	 *         when building a store.
+	 */
+	public static boolean canEnumerate(int nrPegs, int nrColors)
+	{
+		if (!PackedCode.isPackable(nrPegs, nrColors))
+			return false;
+		long spaceSize = PackedCode.spaceSize(nrPegs, nrColors);
+		return spaceSize > 0 && spaceSize <= MAX_ENUMERATED_SPACE_SIZE;
+	}
+
+	/**
+	 * Builds the store of every code that gives the feedback for the guess,
+	 * walking the whole code space once. Only the survivors are kept, so the
+	 * full space is never held.
+	 *
+	 * @param nrPegs
+	 * @param nrColors
+	 * @param guess
+	 *            The packed guess.
+	 * @param feedbackOrdinal
+	 *            The ordinal of the feedback given for the guess.
+	 * @param pool
+	 *            The pool to filter on, or null to filter on the calling
+	 *            thread.
+	 * @return The new store.
+	 * @throws OutOfMemoryError
+	 *             If the survivors do not fit in direct memory.
+	 */
+	public static OffHeapCandidateStore enumerate(int nrPegs, int nrColors,
+			long guess, int feedbackOrdinal, ForkJoinPool pool)
+	{
+		if (!canEnumerate(nrPegs, nrColors))
+			throw new IllegalArgumentException("Cannot enumerate " + nrPegs
+					+ " pegs with " + nrColors + " colors");
+
+		OffHeapCandidateStore store = new OffHeapCandidateStore(nrPegs,
+				nrColors, pool);
+		long spaceSize = PackedCode.spaceSize(nrPegs, nrColors);
+		long waveSize = 1L << store.segmentShift;
+		for (long firstRank = 0; firstRank < spaceSize; firstRank += waveSize)
+			store.enumerateWave(firstRank, Math.min(waveSize, spaceSize
+					- firstRank), guess, feedbackOrdinal);
+		store.releaseUnusedSegments();
+		return store;
+	}
+
+	/**
+	 * Keeps only the codes that give the feedback for the guess.
+	 *
+	 * @param guess
+	 *            The packed guess.
+	 * @param feedbackOrdinal
+	 *            The ordinal of the feedback given for the guess.
+	 */
+	public void retainFeedback(long guess, int feedbackOrdinal)
+	{
+		int nrChunks = (int) ((size + CHUNK_SIZE - 1) >>> CHUNK_SHIFT);
+		int[] survivors = new int[nrChunks];
+		runChunks(new RetainFilter(guess, feedbackOrdinal), survivors);
+
+		size = 0;
+		for (int i = 0; i < nrChunks; i++)
+			moveDown((long) i << CHUNK_SHIFT, survivors[i]);
+		releaseUnusedSegments();
+	}
+
+	/**
+	 *
+	 * @return The number of codes in the store.
+	 */
+	public long size()
+	{
+		return size;
+	}
+
+	/**
+	 *
+	 * @param index
+	 *            The position of a code, between 0 and size() - 1.
+	 * @return The packed code at that position.
+	 */
+	public long codeAt(long index)
+	{
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("No code at " + index
+					+ " in a store of " + size);
+		return get(index);
+	}
+
+	/**
+	 *
+	 * @param index
+	 *            The position of a code, between 0 and size() - 1.
+	 * @return The code at that position.
+	 */
+	public CodeSequence sequenceAt(long index)
+	{
+		return new CodeSequence(codeAt(index), nrPegs);
+	}
+
+	/**
+	 * Drops every code and the buffers holding them.
+	 */
+	public void clear()
+	{
+		segments.clear();
+		size = 0;
+	}
+
+	/**
+	 *
+	 * @return The number of pegs.
+	 */
+	public int getNrPegs()
+	{
+		return nrPegs;
+	}
+
+	/**
+	 *
+	 * @return The number of colors.
+	 */
+	public int getNrColors()
+	{
+		return nrColors;
+	}
+
+	/**
+	 * Scores one run of ranks into the free space after the stored codes and
+	 * appends the survivors. The run starts on a chunk boundary so that no
+	 * chunk straddles two segments.
+	 *
+	 * @param firstRank
+	 * @param nrRanks
+	 * @param guess
+	 * @param feedbackOrdinal
+	 */
+	private void enumerateWave(long firstRank, long nrRanks, long guess,
+			int feedbackOrdinal)
+	{
+		long waveStart = (size + CHUNK_SIZE - 1) & -CHUNK_SIZE;
+		ensureCapacity(waveStart + nrRanks);
+
+		int nrChunks = (int) ((nrRanks + CHUNK_SIZE - 1) >>> CHUNK_SHIFT);
+		int[] survivors = new int[nrChunks];
+		runChunks(new EnumerateFilter(waveStart, firstRank, nrRanks, guess,
+				feedbackOrdinal), survivors);
+
+		for (int i = 0; i < nrChunks; i++)
+			moveDown(waveStart + ((long) i << CHUNK_SHIFT), survivors[i]);
+	}
+
+	/**
+	 * Moves the survivors of a chunk to the end of the stored codes. The end
+	 * never lies after the chunk, so copying forward is safe.
+	 *
+	 * @param chunkStart
+	 * @param nrSurvivors
+	 */
+	private void moveDown(long chunkStart, int nrSurvivors)
+	{
+		if (chunkStart != size)
+			for (int i = 0; i < nrSurvivors; i++)
+				put(size + i, get(chunkStart + i));
+		size += nrSurvivors;
+	}
+
+	/**
+	 * Filters chunks on the pool of the store, or one after another without
+	 * one.
+	 *
+	 * @param filter
+	 * @param survivors
+	 *            Receives the number of survivors of every chunk.
+	 */
+	private void runChunks(ChunkFilter filter, int[] survivors)
+	{
+		if (survivors.length == 0)
+			return;
+		if (pool == null)
+		{
+			for (int i = 0; i < survivors.length; i++)
+				survivors[i] = filter.filter(i);
+			return;
+		}
+		pool.invoke(new ChunkTask(filter, survivors, 0, survivors.length));
+	}
+
+	/**
+	 * Allocates segments until the store can hold the given number of codes.
+	 *
+	 * @param capacity
+	 */
+	private void ensureCapacity(long capacity)
+	{
+		while (((long) segments.size() << segmentShift) < capacity)
+			segments.add(ByteBuffer.allocateDirect(BYTES_PER_CODE << segmentShift)
+					.order(ByteOrder.nativeOrder()).asLongBuffer());
+	}
+
+	/**
+	 * Drops the segments past the last stored code, so their direct memory can
+	 * be reclaimed.
+	 */
+	private void releaseUnusedSegments()
+	{
+		long usedSegments = (size + (1L << segmentShift) - 1) >>> segmentShift;
+		while (segments.size() > usedSegments)
+			segments.remove(segments.size() - 1);
+	}
+
+	private long get(long index)
+	{
+		return segments.get((int) (index >>> segmentShift)).get(
+				(int) (index & ((1L << segmentShift) - 1)));
+	}
+
+	private void put(long index, long code)
+	{
+		segments.get((int) (index >>> segmentShift)).put(
+				(int) (index & ((1L << segmentShift) - 1)), code);
+	}
+
+	/**
+	 * Filters one chunk, compacting its survivors to the start of the chunk.
+	 */
+	private interface ChunkFilter
+	{
+		/**
+		 *
+		 * @param chunk
+		 * @return The number of survivors.
+		 */
+		int filter(int chunk);
+	}
+
+	/**
+	 * Keeps the stored codes of a chunk that give the feedback for the guess.
+	 */
+	private class RetainFilter implements ChunkFilter
+	{
+		private final long guess;
+		private final int feedbackOrdinal;
+
+		RetainFilter(long guess, int feedbackOrdinal)
+		{
+			this.guess = guess;
+			this.feedbackOrdinal = feedbackOrdinal;
+		}
+
+		public int filter(int chunk)
+		{
+			LongBuffer segment = segments.get((int) (((long) chunk << CHUNK_SHIFT) >>> segmentShift));
+			int start = (int) (((long) chunk << CHUNK_SHIFT) & ((1L << segmentShift) - 1));
+			int end = start
+					+ (int) Math.min(CHUNK_SIZE, size - ((long) chunk << CHUNK_SHIFT));
+			int nrSurvivors = 0;
+			for (int i = start; i < end; i++)
+			{
+				long code = segment.get(i);
+				if (isConsistent(code, guess, feedbackOrdinal))
+					segment.put(start + nrSurvivors++, code);
+			}
+			return nrSurvivors;
+		}
+	}
+
+	/**
+	 * Writes the codes of a run of ranks that give the feedback for the guess
+	 * into the chunks of a wave.
+	 */
+	private class EnumerateFilter implements ChunkFilter
+	{
+		private final long waveStart;
+		private final long firstRank;
+		private final long nrRanks;
+		private final long guess;
+		private final int feedbackOrdinal;
+
+		EnumerateFilter(long waveStart, long firstRank, long nrRanks,
+				long guess, int feedbackOrdinal)
+		{
+			this.waveStart = waveStart;
+			this.firstRank = firstRank;
+			this.nrRanks = nrRanks;
+			this.guess = guess;
+			this.feedbackOrdinal = feedbackOrdinal;
+		}
+
+		public int filter(int chunk)
+		{
+			long offset = (long) chunk << CHUNK_SHIFT;
+			long chunkStart = waveStart + offset;
+			LongBuffer segment = segments.get((int) (chunkStart >>> segmentShift));
+			int start = (int) (chunkStart & ((1L << segmentShift) - 1));
+			CodeSpliterator codes = new CodeSpliterator(nrPegs, nrColors,
+					firstRank + offset, firstRank
+							+ Math.min(nrRanks, offset + CHUNK_SIZE));
+			ChunkWriter writer = new ChunkWriter(segment, start, guess,
+					feedbackOrdinal);
+			codes.forEachRemaining(writer);
+			return writer.nrSurvivors;
+		}
+	}
+
+	/**
+	 * Writes the codes it is given that give the feedback for the guess one
+	 * after the other into a segment.
+	 */
+	private class ChunkWriter implements LongConsumer
+	{
+		private final LongBuffer segment;
+		private final int start;
+		private final long guess;
+		private final int feedbackOrdinal;
+		private int nrSurvivors;
+
+		ChunkWriter(LongBuffer segment, int start, long guess,
+				int feedbackOrdinal)
+		{
+			this.segment = segment;
+			this.start = start;
+			this.guess = guess;
+			this.feedbackOrdinal = feedbackOrdinal;
+		}
+
+		public void accept(long code)
+		{
+			if (isConsistent(code, guess, feedbackOrdinal))
+				segment.put(start + nrSurvivors++, code);
+		}
+	}
+
+	/**
+	 *
+	 * @param code
+	 * @param guess
+	 * @param feedbackOrdinal
+	 * @return True if the code gives the feedback for the guess.
+	 */
+	private boolean isConsistent(long code, long guess, int feedbackOrdinal)
+	{
+		return feedbackSpace.ordinalOfCode(PackedCode.score(code, guess,
+				nrPegs)) == feedbackOrdinal;
+	}
+
+	/**
+	 * Splits a range of chunks in halves until single chunks are left.
+	 */
+	private static class ChunkTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final ChunkFilter filter;
+		private final int[] survivors;
+		private final int fromChunk;
+		private final int toChunk;
+
+		ChunkTask(ChunkFilter filter, int[] survivors, int fromChunk,
+				int toChunk)
+		{
+			this.filter = filter;
+			this.survivors = survivors;
+			this.fromChunk = fromChunk;
+			this.toChunk = toChunk;
+		}
+
+		protected void compute()
+		{
+			if (toChunk - fromChunk == 1)
+			{
+				survivors[fromChunk] = filter.filter(fromChunk);
+				return;
+			}
+			int middle = (fromChunk + toChunk) >>> 1;
+			invokeAll(new ChunkTask(filter, survivors, fromChunk, middle),
+					new ChunkTask(filter, survivors, middle, toChunk));
+		}
+	}
+}
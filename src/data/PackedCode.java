@@ -0,0 +1,358 @@
+package data;
+
+/**
+ * PackedCode holds the primitive representation of a code sequence and the
+ * scoring kernel that works on it. A code is packed into a long with one peg
+ * per nibble (peg i lives in bits 4i to 4i+3 and holds its color minus one),
+ * which covers up to 16 pegs and 16 colors. Codes can also be converted to and
+ * from their mixed-radix rank, which orders them the same way as enumerating
+ * the code space with the last peg changing fastest.
+ *
+ * Scores are returned as a primitive feedback code holding the blacks in the
+ * upper bits and the whites in the lowest byte, so no objects are created.
+ *
+ * For up to 15 pegs, a code's colors can also be summarized by a color
+ * histogram packed the same way, one count per nibble. The number of pegs
+ * matching in color is then the sum of the smaller count for every color,
+ * which is computed for all 16 colors at once on the two histograms.
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ *
+ */
+public final class PackedCode
+{
+	public static final int MAX_PEGS = 16;
+	public static final int MAX_COLORS = 16;
+	public static final int MAX_HISTOGRAM_PEGS = 15;
+
+	private static final int BITS_PER_PEG = 4;
+	private static final long PEG_MASK = 0xFL;
+	private static final long LOW_BITS = 0x1111111111111111L;
+	private static final long LOW_NIBBLES = 0x0F0F0F0F0F0F0F0FL;
+	private static final long HIGH_BITS = 0x8080808080808080L;
+	private static final long BYTE_SUM = 0x0101010101010101L;
+	private static final int WHITE_MASK = 0xFF;
+	private static final int BLACK_SHIFT = 8;
+
+	private PackedCode()
+	{
+	}
+
+	/**
+	 *
+	 * @param nrPegs
+	 *            The number of pegs in the code.
+	 * @param nrColors
+	 *            The number of colors, or the highest color used.
+	 * @return True if a code of this size can be packed into a long.
+	 */
+	public static boolean isPackable(int nrPegs, int nrColors)
+	{
+		return nrPegs > 0 && nrPegs <= MAX_PEGS && nrColors > 0
+				&& nrColors <= MAX_COLORS;
+	}
+
+	/**
+	 * Packs an array of peg colors. The colors must lie between 1 and
+	 * MAX_COLORS.
+	 *
+	 * @param pegs
+	 *            Integer array of the code, mapping to the color space.
+	 * @return The packed code.
+	 */
+	public static long pack(int[] pegs)
+	{
+		long packed = 0L;
+		for (int i = 0; i < pegs.length; i++)
+			packed |= ((long) (pegs[i] - 1) & PEG_MASK) << (i * BITS_PER_PEG);
+		return packed;
+	}
+
+	/**
+	 * Unpacks a code into a new array of peg colors.
+	 *
+	 * @param packed
+	 *            The packed code.
+	 * @param nrPegs
+	 *            The number of pegs in the code.
+	 * @return The peg colors.
+	 */
+	public static int[] unpack(long packed, int nrPegs)
+	{
+		int[] pegs = new int[nrPegs];
+		for (int i = 0; i < nrPegs; i++)
+			pegs[i] = pegAt(packed, i);
+		return pegs;
+	}
+
+	/**
+	 *
+	 * @param packed
+	 *            The packed code.
+	 * @param pegNr
+	 *            The slot number of the peg being queried.
+	 * @return The color at the corresponding slot number.
+	 */
+	public static int pegAt(long packed, int pegNr)
+	{
+		return (int) ((packed >>> (pegNr * BITS_PER_PEG)) & PEG_MASK) + 1;
+	}
+
+	/**
+	 * Computes the mixed-radix rank of a packed code, with the first peg being
+	 * the most significant digit.
+	 *
+	 * @param packed
+	 *            The packed code.
+	 * @param nrPegs
+	 *            The number of pegs in the code.
+	 * @param nrColors
+	 *            The number of colors in the code space.
+	 * @return The rank of the code between 0 and nrColors^nrPegs - 1.
+	 */
+	public static long rank(long packed, int nrPegs, int nrColors)
+	{
+		long rank = 0L;
+		for (int i = 0; i < nrPegs; i++)
+			rank = rank * nrColors + ((packed >>> (i * BITS_PER_PEG)) & PEG_MASK);
+		return rank;
+	}
+
+	/**
+	 * Builds the packed code for a mixed-radix rank.
+	 *
+	 * @param rank
+	 *            The rank of the code.
+	 * @param nrPegs
+	 *            The number of pegs in the code.
+	 * @param nrColors
+	 *            The number of colors in the code space.
+	 * @return The packed code.
+	 */
+	public static long unrank(long rank, int nrPegs, int nrColors)
+	{
+		long packed = 0L;
+		for (int i = nrPegs - 1; i >= 0; i--)
+		{
+			packed |= (rank % nrColors) << (i * BITS_PER_PEG);
+			rank /= nrColors;
+		}
+		return packed;
+	}
+
+	/**
+	 *
+	 * @param nrPegs
+	 *            The number of pegs in the code.
+	 * @param nrColors
+	 *            The number of colors in the code space.
+	 * @return The number of codes in the space, or -1 if it does not fit in a
+	 *         long.
+	 */
+	public static long spaceSize(int nrPegs, int nrColors)
+	{
+		long size = 1L;
+		for (int i = 0; i < nrPegs; i++)
+		{
+			if (size > Long.MAX_VALUE / nrColors)
+				return -1L;
+			size *= nrColors;
+		}
+		return size;
+	}
+
+	/**
+	 * Scores two packed codes against each other without allocating. Blacks
+	 * are found by comparing all nibbles at once. Whites come from the color
+	 * histograms when there are few enough pegs, or else by matching the
+	 * remaining pegs with a bit mask of the pegs already used.
+	 *
+	 * @param secret
+	 *            The packed code being guessed.
+	 * @param guess
+	 *            The packed guess.
+	 * @param nrPegs
+	 *            The number of pegs in both codes.
+	 * @return The feedback code for the guess.
+	 */
+	public static int score(long secret, long guess, int nrPegs)
+	{
+		if (nrPegs <= MAX_HISTOGRAM_PEGS)
+			return score(secret, guess, nrPegs,
+					colorHistogram(secret, nrPegs),
+					colorHistogram(guess, nrPegs));
+
+		int black = countBlacks(secret, guess, nrPegs);
+		int matched = 0;
+		int usedGuessPegs = 0;
+		int usedSecretPegs = 0;
+
+		for (int i = 0; i < nrPegs; i++)
+			if (pegAt(secret, i) == pegAt(guess, i))
+			{
+				usedSecretPegs |= 1 << i;
+				usedGuessPegs |= 1 << i;
+			}
+
+		for (int i = 0; i < nrPegs; i++)
+		{
+			if ((usedSecretPegs & (1 << i)) != 0)
+				continue;
+			long color = (secret >>> (i * BITS_PER_PEG)) & PEG_MASK;
+			for (int j = 0; j < nrPegs; j++)
+				if ((usedGuessPegs & (1 << j)) == 0
+						&& ((guess >>> (j * BITS_PER_PEG)) & PEG_MASK) == color)
+				{
+					usedGuessPegs |= 1 << j;
+					matched++;
+					break;
+				}
+		}
+
+		return toFeedbackCode(black, matched);
+	}
+
+	/**
+	 * Scores two packed codes against each other using their precomputed
+	 * color histograms, which only works for up to MAX_HISTOGRAM_PEGS pegs.
+	 *
+	 * @param secret
+	 *            The packed code being guessed.
+	 * @param guess
+	 *            The packed guess.
+	 * @param nrPegs
+	 *            The number of pegs in both codes.
+	 * @param secretHistogram
+	 *            The color histogram of the secret.
+	 * @param guessHistogram
+	 *            The color histogram of the guess.
+	 * @return The feedback code for the guess.
+	 */
+	public static int score(long secret, long guess, int nrPegs,
+			long secretHistogram, long guessHistogram)
+	{
+		int black = countBlacks(secret, guess, nrPegs);
+		return toFeedbackCode(black,
+				countMatches(secretHistogram, guessHistogram) - black);
+	}
+
+	/**
+	 * Builds the color histogram of a code, holding in nibble c the number of
+	 * pegs with color c + 1. Only valid for up to MAX_HISTOGRAM_PEGS pegs, so
+	 * that no count overflows its nibble.
+	 *
+	 * @param code
+	 *            The packed code.
+	 * @param nrPegs
+	 *            The number of pegs in the code.
+	 * @return The packed color histogram.
+	 */
+	public static long colorHistogram(long code, int nrPegs)
+	{
+		long histogram = 0L;
+		for (int i = 0; i < nrPegs; i++)
+			histogram += 1L << (((code >>> (i * BITS_PER_PEG)) & PEG_MASK) * BITS_PER_PEG);
+		return histogram;
+	}
+
+	/**
+	 * Counts the pegs matching in color, whatever their slot, as the sum over
+	 * all colors of the smaller of both counts. The even and odd nibbles are
+	 * spread into bytes so every lane has a spare high bit: setting it before
+	 * subtracting leaves it set exactly where the first count is not smaller.
+	 *
+	 * @param histogramA
+	 *            A packed color histogram.
+	 * @param histogramB
+	 *            Another packed color histogram.
+	 * @return The number of pegs matching in color.
+	 */
+	public static int countMatches(long histogramA, long histogramB)
+	{
+		return sumOfByteMinima(histogramA & LOW_NIBBLES, histogramB
+				& LOW_NIBBLES)
+				+ sumOfByteMinima((histogramA >>> BITS_PER_PEG) & LOW_NIBBLES,
+						(histogramB >>> BITS_PER_PEG) & LOW_NIBBLES);
+	}
+
+	/**
+	 *
+	 * @param a
+	 *            Eight counts, one per byte, each below 128.
+	 * @param b
+	 *            Eight counts, one per byte, each below 128.
+	 * @return The sum of the smaller count of every byte.
+	 */
+	private static int sumOfByteMinima(long a, long b)
+	{
+		long aIsNotSmaller = (((a | HIGH_BITS) - b) & HIGH_BITS) >>> 7;
+		long mask = aIsNotSmaller * 0xFF;
+		long minima = (b & mask) | (a & ~mask);
+		return (int) ((minima * BYTE_SUM) >>> 56);
+	}
+
+	/**
+	 * Counts the pegs with the same color in the same slot.
+	 *
+	 * @param secret
+	 *            The packed code being guessed.
+	 * @param guess
+	 *            The packed guess.
+	 * @param nrPegs
+	 *            The number of pegs in both codes.
+	 * @return The number of blacks.
+	 */
+	public static int countBlacks(long secret, long guess, int nrPegs)
+	{
+		long diff = secret ^ guess;
+		// Fold every nibble onto its lowest bit, leaving a 1 where pegs differ
+		diff = (diff | (diff >>> 1) | (diff >>> 2) | (diff >>> 3)) & LOW_BITS;
+		return nrPegs - Long.bitCount(diff & pegMask(nrPegs));
+	}
+
+	/**
+	 *
+	 * @param nrPegs
+	 *            The number of pegs in the code.
+	 * @return A mask covering the nibbles used by a code of this size.
+	 */
+	public static long pegMask(int nrPegs)
+	{
+		return nrPegs >= MAX_PEGS ? -1L : (1L << (nrPegs * BITS_PER_PEG)) - 1;
+	}
+
+	/**
+	 *
+	 * @param black
+	 *            Number of blacks.
+	 * @param white
+	 *            Number of whites.
+	 * @return The primitive feedback code.
+	 */
+	public static int toFeedbackCode(int black, int white)
+	{
+		return (black << BLACK_SHIFT) | white;
+	}
+
+	/**
+	 *
+	 * @param feedbackCode
+	 *            A primitive feedback code.
+	 * @return The number of blacks.
+	 */
+	public static int blackOf(int feedbackCode)
+	{
+		return feedbackCode >>> BLACK_SHIFT;
+	}
+
+	/**
+	 *
+	 * @param feedbackCode
+	 *            A primitive feedback code.
+	 * @return The number of whites.
+	 */
+	public static int whiteOf(int feedbackCode)
+	{
+		return feedbackCode & WHITE_MASK;
+	}
+}
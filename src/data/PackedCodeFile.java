@@ -0,0 +1,292 @@
+package data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A binary code file holding packed codes at a fixed width, memory-mapped so
+ * any code is read by its index without loading the file and taking the next
+ * code is an increment. Tens of millions of codes take a few hundred
+ * megabytes of page cache and no heap.
+ *
+ * The file starts with a 16 byte header: the magic number "MMCF", a version
+ * byte, the number of pegs and colors as bytes, a padding byte and the number
+ * of codes as a long. Every code then takes (pegs + 1) / 2 bytes, the packed
+ * code in little-endian order. Text code files are converted with convert,
+ * or by running this class:
+ *
+ * PackedCodeFile <text code file> <packed code file>
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ *
+ */
+public class PackedCodeFile implements CodeSource
+{
+	private static final int MAGIC = 0x4D4D4346; // "MMCF"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	private static final int SEGMENT_SHIFT = 26;
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final FileChannel channel;
+	private final MappedByteBuffer[] segments;
+	private final int nrPegs;
+	private final int nrColors;
+	private final int codeSize;
+	private final long nrCodes;
+	private final AtomicLong nextIndex = new AtomicLong();
+
+	/**
+	 * Maps a packed code file.
+	 *
+	 * @param file
+	 * @throws IOException
+	 *             If the file cannot be read or is not a packed code file.
+	 */
+	public PackedCodeFile(File file) throws IOException
+	{
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try
+		{
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			while (header.hasRemaining())
+				if (channel.read(header) < 0)
+					break;
+			header.flip();
+			if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC
+					|| header.get() != VERSION)
+				throw new IOException(file + " is not a packed code file");
+			nrPegs = header.get();
+			nrColors = header.get();
+			header.get();
+			nrCodes = header.getLong();
+			codeSize = codeSize(nrPegs);
+			if (!PackedCode.isPackable(nrPegs, nrColors) || nrCodes < 0
+					|| nrCodes > (channel.size() - HEADER_SIZE) / codeSize)
+				throw new IOException(file + " is not a packed code file");
+
+			segments = new MappedByteBuffer[(int) ((nrCodes + (1L << SEGMENT_SHIFT) - 1) >>> SEGMENT_SHIFT)];
+			for (int i = 0; i < segments.length; i++)
+			{
+				long first = (long) i << SEGMENT_SHIFT;
+				long nrSegmentCodes = Math.min(1L << SEGMENT_SHIFT, nrCodes
+						- first);
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+						HEADER_SIZE + first * codeSize, nrSegmentCodes
+								* codeSize);
+			}
+		}
+		catch (IOException e)
+		{
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 *
+	 * @param nrPegs
+	 * @return The number of bytes a packed code takes in the file.
+	 */
+	private static int codeSize(int nrPegs)
+	{
+		return (nrPegs + 1) / 2;
+	}
+
+	/**
+	 *
+	 * @param file
+	 * @return True if the file starts with the magic number of a packed code
+	 *         file.
+	 */
+	public static boolean isPackedCodeFile(File file)
+	{
+		try
+		{
+			FileChannel channel = FileChannel.open(file.toPath(),
+					StandardOpenOption.READ);
+			try
+			{
+				ByteBuffer magic = ByteBuffer.allocate(4);
+				while (magic.hasRemaining())
+					if (channel.read(magic) < 0)
+						return false;
+				magic.flip();
+				return magic.getInt() == MAGIC;
+			}
+			finally
+			{
+				channel.close();
+			}
+		}
+		catch (IOException e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Converts a text code file into a packed code file.
+	 *
+	 * @param textFile
+	 * @param packedFile
+	 * @return The number of codes converted.
+	 * @throws IOException
+	 *             If the text file cannot be read or holds codes that cannot
+	 *             be packed.
+	 */
+	public static long convert(File textFile, File packedFile)
+			throws IOException
+	{
+		TextCodeFile codes = new TextCodeFile(textFile);
+		int nrPegs = codes.getNrPegs();
+		int nrColors = codes.getNrColors();
+		if (!PackedCode.isPackable(nrPegs, nrColors))
+		{
+			codes.close();
+			throw new IOException("Cannot pack codes of " + nrPegs
+					+ " pegs with " + nrColors + " colors");
+		}
+
+		int codeSize = codeSize(nrPegs);
+		long nrCodes = 0;
+		FileChannel channel = FileChannel.open(packedFile.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		try
+		{
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			buffer.putInt(MAGIC).put((byte) VERSION).put((byte) nrPegs)
+					.put((byte) nrColors).put((byte) 0).putLong(0L);
+
+			CodeSequence code;
+			while ((code = codes.next()) != null)
+			{
+				if (!code.isPacked())
+					throw new IOException("Cannot pack the code " + code);
+				for (int i = 0; i < nrPegs; i++)
+					if (code.getPegColorAt(i) < 1
+							|| code.getPegColorAt(i) > nrColors)
+						throw new IOException("The code " + code
+								+ " has colors outside 1 to " + nrColors);
+
+				if (buffer.remaining() < codeSize)
+					write(channel, buffer);
+				long packed = code.getPacked();
+				for (int b = 0; b < codeSize; b++)
+					buffer.put((byte) (packed >>> (b * 8)));
+				nrCodes++;
+			}
+			write(channel, buffer);
+
+			ByteBuffer count = ByteBuffer.allocate(8);
+			count.putLong(nrCodes).flip();
+			while (count.hasRemaining())
+				channel.write(count, HEADER_SIZE - 8 + count.position());
+		}
+		finally
+		{
+			channel.close();
+			codes.close();
+		}
+		return nrCodes;
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buffer)
+			throws IOException
+	{
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 *
+	 * @param index
+	 * @return The packed code at an index.
+	 */
+	public long codeAt(long index)
+	{
+		MappedByteBuffer segment = segments[(int) (index >>> SEGMENT_SHIFT)];
+		int offset = (int) (index & ((1L << SEGMENT_SHIFT) - 1)) * codeSize;
+		long packed = 0;
+		for (int b = 0; b < codeSize; b++)
+			packed |= (long) (segment.get(offset + b) & 0xFF) << (b * 8);
+		return packed;
+	}
+
+	/**
+	 *
+	 * @param index
+	 * @return The code at an index.
+	 */
+	public CodeSequence sequenceAt(long index)
+	{
+		return new CodeSequence(codeAt(index), nrPegs);
+	}
+
+	public CodeSequence next()
+	{
+		long index = nextIndex.getAndIncrement();
+		if (index >= nrCodes)
+			return null;
+		return sequenceAt(index);
+	}
+
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+
+	/**
+	 *
+	 * @return The number of codes in the file.
+	 */
+	public long size()
+	{
+		return nrCodes;
+	}
+
+	public int getNrPegs()
+	{
+		return nrPegs;
+	}
+
+	public int getNrColors()
+	{
+		return nrColors;
+	}
+
+	/**
+	 * Converts a text code file into a packed code file.
+	 *
+	 * @param args
+	 *            The text code file and the packed code file.
+	 */
+	public static void main(String[] args)
+	{
+		if (args.length != 2)
+		{
+			System.err.println("Usage: PackedCodeFile <text code file> <packed code file>");
+			System.exit(-1);
+		}
+
+		try
+		{
+			long nrCodes = convert(new File(args[0]), new File(args[1]));
+			System.out.println("Packed " + nrCodes + " codes into " + args[1]);
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not convert " + args[0] + ": "
+					+ e.getMessage());
+			System.exit(-1);
+		}
+	}
+}
@@ -1,44 +1,41 @@
 package data;
 
+import java.util.Arrays;
+
 /**
  * A PatternStatistic object holds the statistics of occurrence and counts for a
- * particular regular expression. These objects can be compared by their
+ * particular run of peg colors. These objects can be compared by their
  * occurrence values, the probability variable.
- * 
+ *
  * @author M. Curtis, M. Edoror and B. Farrington
- * 
+ *
  */
 public class PatternStatistic implements Comparable<PatternStatistic>
 {
 	private int count;
 	private double probability;
-	private String regex;
-	private int length;
+	private final int[] pegs;
 
 	/**
-	 * Constructs a pattern statistic with a regex.
-	 * 
-	 * @param id
-	 *            Regex to identify this pattern.
+	 * Constructs a pattern statistic for a run of pegs.
+	 *
+	 * @param pegs
+	 *            The colors holding the run.
+	 * @param from
+	 *            The first peg of the run.
+	 * @param length
+	 *            The number of pegs in the run.
 	 */
-	public PatternStatistic(String id)
+	public PatternStatistic(int[] pegs, int from, int length)
 	{
-		regex = id;
+		this.pegs = Arrays.copyOfRange(pegs, from, from + length);
 		count = 0;
-		int whitespace = 0;
 		probability = 0.0;
-		char[] chars = id.toCharArray();
-		for (int i = 0; i < id.length(); ++i)
-		{
-			if (chars[i] == ' ')
-				whitespace++;
-		}
-		length = id.length() - whitespace;
 	}
 
 	/**
-	 * 
-	 * @return The number of times this regular expression has been witnessed.
+	 *
+	 * @return The number of times this pattern has been witnessed.
 	 */
 	public int getCount()
 	{
@@ -46,29 +43,30 @@ public class PatternStatistic implements Comparable<PatternStatistic>
 	}
 
 	/**
-	 * 
-	 * @return The pattern for this statistic.
+	 *
+	 * @param pegNr
+	 * @return The color of a peg of the pattern.
 	 */
-	public String getRegex()
+	public int getPegColorAt(int pegNr)
 	{
-		return regex;
+		return pegs[pegNr];
 	}
 
 	/**
 	 * Divides current count by number of possible occurrences, which is given.
-	 * 
+	 *
 	 * @param instances
 	 *            Number of maximum occurrences possible for this pattern.
 	 * @return The occurrence rate.
 	 */
 	public double calcProbability(int instances)
 	{
-		probability = (1.0 * count) / (1.0 * instances / length);
+		probability = (1.0 * count) / (1.0 * instances / pegs.length);
 		return this.probability;
 	}
 
 	/**
-	 * 
+	 *
 	 * @return The current occurrence rate.
 	 */
 	public double getProbability()
@@ -85,31 +83,40 @@ public class PatternStatistic implements Comparable<PatternStatistic>
 	}
 
 	/**
-	 * 
-	 * @return The length of the regex, which is the number of pegs it occupies.
+	 *
+	 * @return The length of the pattern, which is the number of pegs it
+	 *         occupies.
 	 */
 	public int length()
 	{
-		return this.length;
+		return pegs.length;
 	}
 
 	public String toString()
 	{
-		return "" + regex + ": (" + count + ")---" + probability;
+		String returnString = "";
+		for (int i = 0; i < pegs.length - 1; i++)
+			returnString += pegs[i] + " ";
+		return returnString + pegs[pegs.length - 1] + ": (" + count + ")---"
+				+ probability;
 	}
 
 	public boolean equals(Object o)
 	{
 		if (o.getClass().equals(this.getClass()))
 		{
-			return ((PatternStatistic) o).getRegex().equalsIgnoreCase(
-					this.getRegex()) ? true : false;
+			return Arrays.equals(((PatternStatistic) o).pegs, pegs);
 
 		}
 		return false;
 
 	}
 
+	public int hashCode()
+	{
+		return Arrays.hashCode(pegs);
+	}
+
 	@Override
 	public int compareTo(PatternStatistic o)
 	{
@@ -121,4 +128,4 @@ public class PatternStatistic implements Comparable<PatternStatistic>
 			return (o.probability > this.probability) ? -1 : 1;
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,139 @@
+package data;
+
+import java.util.Arrays;
+
+/**
+ * A PatternTrie holds the pattern statistics of a learner, keyed by their
+ * runs of peg colors, in a trie over the colors. Counting the patterns in a
+ * code takes one walk down the trie from every peg, however many patterns
+ * have been learned, and no code is ever turned into a string. The nodes are
+ * kept in flat arrays, with a row of children per node.
+ *
+ * A full Aho-Corasick automaton would save the walk from every peg, but a
+ * learner adds every run of its code before counting, so a code matches a
+ * number of patterns quadratic in its pegs anyway.
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ *
+ */
+public class PatternTrie
+{
+	private static final int INITIAL_NR_NODES = 64;
+
+	private final int nrColors;
+	private int[] children;
+	private PatternStatistic[] statistics;
+	private int[] lastMatchEnds;
+	private int[] lastMatchCodes;
+	private int nrNodes;
+	private int nrPatterns;
+	private int nrCodesCounted;
+
+	/**
+	 * Constructs an empty trie for codes of colors 1 to nrColors.
+	 *
+	 * @param nrColors
+	 */
+	public PatternTrie(int nrColors)
+	{
+		this.nrColors = nrColors;
+		children = new int[INITIAL_NR_NODES * nrColors];
+		statistics = new PatternStatistic[INITIAL_NR_NODES];
+		lastMatchEnds = new int[INITIAL_NR_NODES];
+		lastMatchCodes = new int[INITIAL_NR_NODES];
+		nrNodes = 1;
+	}
+
+	/**
+	 * Adds the pattern of a run of pegs, unless the trie already holds it.
+	 *
+	 * @param pegs
+	 * @param from
+	 *            The first peg of the run.
+	 * @param length
+	 *            The number of pegs in the run.
+	 * @return The statistic of the new pattern, or null if the trie already
+	 *         held the pattern.
+	 * @throws IllegalArgumentException
+	 *             If a peg has a color outside 1 to nrColors.
+	 */
+	public PatternStatistic add(int[] pegs, int from, int length)
+	{
+		int node = 0;
+		for (int i = from; i < from + length; i++)
+		{
+			int child = childIndex(node, pegs[i]);
+			if (children[child] == 0)
+			{
+				if (nrNodes == statistics.length)
+					grow();
+				children[child] = nrNodes++;
+			}
+			node = children[child];
+		}
+		if (statistics[node] != null)
+			return null;
+		statistics[node] = new PatternStatistic(pegs, from, length);
+		nrPatterns++;
+		return statistics[node];
+	}
+
+	/**
+	 * Increases the count of every pattern found in a code. Like a regular
+	 * expression scan, overlapping occurrences of the same pattern are only
+	 * counted once: an occurrence counts if it starts after the last one
+	 * counted ends.
+	 *
+	 * @param pegs
+	 *            The colors of the code.
+	 * @throws IllegalArgumentException
+	 *             If a peg has a color outside 1 to nrColors.
+	 */
+	public void count(int[] pegs)
+	{
+		nrCodesCounted++;
+		for (int from = 0; from < pegs.length; from++)
+		{
+			int node = 0;
+			for (int i = from; i < pegs.length; i++)
+			{
+				node = children[childIndex(node, pegs[i])];
+				if (node == 0)
+					break;
+				if (statistics[node] != null
+						&& (lastMatchCodes[node] != nrCodesCounted || from >= lastMatchEnds[node]))
+				{
+					statistics[node].increaseCount();
+					lastMatchCodes[node] = nrCodesCounted;
+					lastMatchEnds[node] = i + 1;
+				}
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @return The number of patterns in the trie.
+	 */
+	public int size()
+	{
+		return nrPatterns;
+	}
+
+	private int childIndex(int node, int color)
+	{
+		if (color < 1 || color > nrColors)
+			throw new IllegalArgumentException("Colors run from 1 to "
+					+ nrColors + ", not " + color);
+		return node * nrColors + color - 1;
+	}
+
+	private void grow()
+	{
+		int capacity = statistics.length * 2;
+		children = Arrays.copyOf(children, capacity * nrColors);
+		statistics = Arrays.copyOf(statistics, capacity);
+		lastMatchEnds = Arrays.copyOf(lastMatchEnds, capacity);
+		lastMatchCodes = Arrays.copyOf(lastMatchCodes, capacity);
+	}
+}
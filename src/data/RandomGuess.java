@@ -1,6 +1,6 @@
 package data;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
 /**
  * The random guess is the basis of our Mastermind Solver. A random guess can be
@@ -76,7 +76,7 @@ public class RandomGuess extends CodeSequence
 		int[] pegs = new int[sequenceToPermute.getNrPegs()];
 		for (int i = 0; i < pegs.length; i++)
 			pegs[i] = sequenceToPermute.getPegColorAt(i);
-		Random rng = new Random();
+		SplittableRandom rng = RandomSource.current();
 		int temp;
 		int rndIndex;
 		for (int i = pegs.length - 1; i >= 1; i--)
@@ -118,9 +118,12 @@ public class RandomGuess extends CodeSequence
 		}
 
 		// The first indexes will be our black pegs and the map to their own
-		// index (identity)
+		// index (identity). Rotating the remaining indexes comes back to where
+		// it started, so a rotation that never fits means the feedback cannot
+		// be matched.
 		for (int i = 0; i < feedbackToMatch.getBlack(); i++)
 		{
+			int nrRotations = 0;
 			while (feedbackToMatch.getWhite() > 0
 					&& unusedColorsAreTheSame(permutation, sequenceToMatch,
 							indexesToPermute[i])
@@ -128,6 +131,9 @@ public class RandomGuess extends CodeSequence
 							&& indexesToPermute.length == sequenceToMatch.getNrPegs()
 							&& sequenceToMatch.getNrPegs() <= maxColorFreq * 2 && sequenceToMatch.getPegColorAt(indexesToPermute[0]) != mostFreqColor))
 			{
+				if (++nrRotations > indexesToPermute.length)
+					throw new IllegalStateException(
+							"No code gives the feedback received so far");
 				int temp = indexesToPermute[indexesToPermute.length - 1];
 				System.arraycopy(indexesToPermute, 0, indexesToPermute, 1,
 						indexesToPermute.length - 1);
@@ -293,7 +299,7 @@ public class RandomGuess extends CodeSequence
 			CodeSequence sequence, int index)
 	{
 		int indexMapping = -1;
-		Random rng = new Random();
+		SplittableRandom rng = RandomSource.current();
 		boolean isValidMapping = false;
 		int availablePositions = sequence.getNrPegs();
 		int[] usedMappings = new int[permutation.length];
@@ -348,7 +354,7 @@ public class RandomGuess extends CodeSequence
 	private static int[] createUniqueRandIntSet(int nrRandInts, int upTo)
 	{
 		int[] uniqueRandInts = new int[nrRandInts];
-		Random rng = new Random();
+		SplittableRandom rng = RandomSource.current();
 		int randInt = 0;
 		boolean isUnique = false;
 
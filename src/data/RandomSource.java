@@ -0,0 +1,79 @@
+package data;
+
+import java.util.SplittableRandom;
+
+/**
+ * The RandomSource gives every thread its own SplittableRandom, so drawing a
+ * random number neither allocates nor contends with other threads. A thread's
+ * generator can be reseeded to make runs reproducible; seeding it from a run
+ * seed and a game number makes a game play out the same whichever thread
+ * plays it.
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ *
+ */
+public final class RandomSource
+{
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	private static final ThreadLocal<SplittableRandom> generators = new ThreadLocal<SplittableRandom>()
+	{
+		protected SplittableRandom initialValue()
+		{
+			return new SplittableRandom();
+		}
+	};
+
+	private RandomSource()
+	{
+	}
+
+	/**
+	 *
+	 * @return The generator of the calling thread.
+	 */
+	public static SplittableRandom current()
+	{
+		return generators.get();
+	}
+
+	/**
+	 * Reseeds the generator of the calling thread.
+	 *
+	 * @param seed
+	 */
+	public static void seed(long seed)
+	{
+		generators.set(new SplittableRandom(seed));
+	}
+
+	/**
+	 * Reseeds the generator of the calling thread with one of many streams
+	 * derived from a single seed. The seed and stream number are mixed so that
+	 * neighbouring streams do not overlap.
+	 *
+	 * @param seed
+	 *            The seed of the run.
+	 * @param stream
+	 *            The number of the stream, such as a game number.
+	 */
+	public static void seed(long seed, long stream)
+	{
+		long z = seed + stream * GOLDEN_GAMMA;
+		z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+		z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		seed(z ^ (z >>> 33));
+	}
+
+	/**
+	 *
+	 * @param bound
+	 *            The upper bound, exclusive.
+	 * @return A random int between 0 and bound - 1 from the calling thread's
+	 *         generator.
+	 */
+	public static int nextInt(int bound)
+	{
+		return generators.get().nextInt(bound);
+	}
+}
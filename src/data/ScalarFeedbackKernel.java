@@ -0,0 +1,50 @@
+package data;
+
+/**
+ * The batch feedback kernel used when the Vector API is not available. It
+ * walks the same column layout one code at a time.
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ *
+ */
+class ScalarFeedbackKernel extends BatchFeedbackKernel
+{
+	public void score(CodeBatch codes, long guess, Scratch scratch)
+	{
+		int nrPegs = codes.getNrPegs();
+		int nrColors = codes.getNrColors();
+		prepare(guess, codes, scratch);
+		byte[] guessPegs = scratch.guessPegs;
+		byte[] guessColorCounts = scratch.guessColorCounts;
+		byte[] blacks = scratch.blacks;
+		byte[] matches = scratch.matches;
+
+		for (int i = 0; i < codes.size(); i++)
+		{
+			blacks[i] = 0;
+			matches[i] = 0;
+		}
+
+		for (int p = 0; p < nrPegs; p++)
+		{
+			byte[] column = codes.getPegColumn(p);
+			for (int i = 0; i < codes.size(); i++)
+				if (column[i] == guessPegs[p])
+					blacks[i]++;
+		}
+
+		for (int c = 0; c < nrColors; c++)
+		{
+			if (guessColorCounts[c] == 0)
+				continue;
+			byte[] column = codes.getColorCountColumn(c);
+			for (int i = 0; i < codes.size(); i++)
+				matches[i] += Math.min(column[i], guessColorCounts[c]);
+		}
+	}
+
+	public String getName()
+	{
+		return "scalar";
+	}
+}
@@ -0,0 +1,48 @@
+package data;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The SharedPools hand out one fork-join pool per number of threads, shared by
+ * every guesser that evaluates guesses or filters codes on that many threads.
+ * Guessers can then be created and dropped freely without leaving idle pools
+ * behind, and a guesser only ever uses the threads it was given. The workers
+ * of a pool are daemon threads that stop once the pool has been idle for a
+ * while.
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ *
+ */
+public final class SharedPools
+{
+	private static final ConcurrentHashMap<Integer, ForkJoinPool> pools = new ConcurrentHashMap<Integer, ForkJoinPool>();
+
+	private SharedPools()
+	{
+	}
+
+	/**
+	 *
+	 * @param nrThreads
+	 * @return The shared pool, or null for a single thread, which works on
+	 *         the calling thread instead.
+	 */
+	public static ForkJoinPool forThreads(int nrThreads)
+	{
+		if (nrThreads <= 1)
+			return null;
+
+		ForkJoinPool pool = pools.get(nrThreads);
+		if (pool == null)
+		{
+			ForkJoinPool newPool = new ForkJoinPool(nrThreads);
+			pool = pools.putIfAbsent(nrThreads, newPool);
+			if (pool == null)
+				pool = newPool;
+			else
+				newPool.shutdown();
+		}
+		return pool;
+	}
+}
@@ -0,0 +1,134 @@
+package data;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Reads the codes of a text code file lazily, one line per code. The first
+ * line holds the number of colors and then the number of pegs; every other
+ * non-blank line holds the colors of one code separated by whitespace. Lines
+ * are parsed by hand rather than through a Scanner, and only the current line
+ * is held in memory.
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ *
+ */
+public class TextCodeFile implements CodeSource
+{
+	private final BufferedReader reader;
+	private final int nrPegs;
+	private final int nrColors;
+	private final int[] pegs;
+
+	/**
+	 * Opens a code file and reads its header.
+	 *
+	 * @param file
+	 * @throws IOException
+	 *             If the file cannot be read or does not start with a header.
+	 */
+	public TextCodeFile(File file) throws IOException
+	{
+		reader = Files.newBufferedReader(file.toPath(),
+				StandardCharsets.US_ASCII);
+		try
+		{
+			String header = nextLine();
+			int[] sizes = new int[2];
+			if (header == null || parseInts(header, sizes) < sizes.length)
+				throw new IOException(file
+						+ " does not start with the number of colors and pegs");
+			nrColors = sizes[0];
+			nrPegs = sizes[1];
+			if (nrColors <= 0 || nrPegs <= 0)
+				throw new IOException(file + " has " + nrColors
+						+ " colors and " + nrPegs + " pegs");
+		}
+		catch (IOException e)
+		{
+			reader.close();
+			throw e;
+		}
+		pegs = new int[nrPegs];
+	}
+
+	/**
+	 *
+	 * @return The next non-blank line, or null at the end of the file.
+	 * @throws IOException
+	 */
+	private String nextLine() throws IOException
+	{
+		String line;
+		while ((line = reader.readLine()) != null)
+			if (!line.trim().isEmpty())
+				return line;
+		return null;
+	}
+
+	/**
+	 * Parses the whitespace separated ints at the start of a line.
+	 *
+	 * @param line
+	 * @param values
+	 *            The array to fill.
+	 * @return The number of values parsed, at most values.length.
+	 * @throws IOException
+	 *             If the line holds something other than ints.
+	 */
+	private static int parseInts(String line, int[] values) throws IOException
+	{
+		int nrValues = 0;
+		int i = 0;
+		while (nrValues < values.length)
+		{
+			while (i < line.length() && Character.isWhitespace(line.charAt(i)))
+				i++;
+			if (i == line.length())
+				break;
+
+			int value = 0;
+			int start = i;
+			while (i < line.length() && !Character.isWhitespace(line.charAt(i)))
+			{
+				int digit = line.charAt(i) - '0';
+				if (digit < 0 || digit > 9 || i - start > 8)
+					throw new IOException("Expected an int, but read \""
+							+ line + "\"");
+				value = value * 10 + digit;
+				i++;
+			}
+			values[nrValues++] = value;
+		}
+		return nrValues;
+	}
+
+	public synchronized CodeSequence next() throws IOException
+	{
+		String line = nextLine();
+		if (line == null)
+			return null;
+		if (parseInts(line, pegs) < nrPegs)
+			throw new IOException("Expected " + nrPegs + " pegs, but read \""
+					+ line + "\"");
+		return new CodeSequence(pegs);
+	}
+
+	public void close() throws IOException
+	{
+		reader.close();
+	}
+
+	public int getNrPegs()
+	{
+		return nrPegs;
+	}
+
+	public int getNrColors()
+	{
+		return nrColors;
+	}
+}
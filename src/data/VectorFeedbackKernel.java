@@ -0,0 +1,77 @@
+package data;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The batch feedback kernel built on the Vector API. Each step scores as many
+ * codes as fit in the preferred vector width, keeping the blacks and matches
+ * in registers while walking the peg and color columns. This class can only
+ * be loaded when the jdk.incubator.vector module is available.
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ *
+ */
+class VectorFeedbackKernel extends BatchFeedbackKernel
+{
+	private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+	private static final ByteVector ONES = ByteVector.broadcast(SPECIES,
+			(byte) 1);
+
+	public void score(CodeBatch codes, long guess, Scratch scratch)
+	{
+		int nrPegs = codes.getNrPegs();
+		int nrColors = codes.getNrColors();
+		int size = codes.size();
+		prepare(guess, codes, scratch);
+		byte[] guessPegs = scratch.guessPegs;
+		byte[] guessColorCounts = scratch.guessColorCounts;
+		byte[] blacks = scratch.blacks;
+		byte[] matches = scratch.matches;
+
+		int bound = SPECIES.loopBound(size);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length())
+		{
+			ByteVector black = ByteVector.zero(SPECIES);
+			for (int p = 0; p < nrPegs; p++)
+			{
+				ByteVector column = ByteVector.fromArray(SPECIES,
+						codes.getPegColumn(p), i);
+				black = black.add(ONES, column.eq(guessPegs[p]));
+			}
+
+			ByteVector match = ByteVector.zero(SPECIES);
+			for (int c = 0; c < nrColors; c++)
+			{
+				if (guessColorCounts[c] == 0)
+					continue;
+				ByteVector column = ByteVector.fromArray(SPECIES,
+						codes.getColorCountColumn(c), i);
+				match = match.add(column.min(guessColorCounts[c]));
+			}
+
+			black.intoArray(blacks, i);
+			match.intoArray(matches, i);
+		}
+
+		for (; i < size; i++)
+		{
+			byte black = 0;
+			for (int p = 0; p < nrPegs; p++)
+				if (codes.getPegColumn(p)[i] == guessPegs[p])
+					black++;
+			byte match = 0;
+			for (int c = 0; c < nrColors; c++)
+				match += Math.min(codes.getColorCountColumn(c)[i],
+						guessColorCounts[c]);
+			blacks[i] = black;
+			matches[i] = match;
+		}
+	}
+
+	public String getName()
+	{
+		return "vector (" + SPECIES.length() + " lanes)";
+	}
+}
@@ -33,4 +33,12 @@ public interface Guesser
 	 * @param feedback
 	 */
 	public void giveFeedbackForLastGuess(Feedback feedback);
+
+	/**
+	 * Returns the counters and histograms the guesser has recorded
+	 * over every game it played, in place of printing its progress.
+	 * 
+	 * @return
+	 */
+	public GuesserMetrics getMetrics();
 }
@@ -0,0 +1,193 @@
+package game;
+
+/**
+ * GuesserMetrics holds the counters and histograms a guesser records while
+ * guessing, instead of printing its progress every turn. A guesser is used by
+ * one thread at a time, so recording is plain arithmetic on fields; the
+ * metrics of several guessers can be merged once they are done. The metrics
+ * build up over every game a guesser plays.
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ *
+ */
+public class GuesserMetrics
+{
+	private long nrGuesses = 0;
+	private long nrLookedUpGuesses = 0;
+	private long nrFallbacks = 0;
+	private long nrConsistencyChecks = 0;
+	private long generatingNanos = 0;
+	private long validatingNanos = 0;
+	private final Histogram candidatesPerGuess = new Histogram();
+	private final Histogram candidateSetSizes = new Histogram();
+
+	/**
+	 * Records a guess that was searched or sampled for.
+	 *
+	 * @param nrCandidatesGenerated
+	 *            The number of codes considered before settling on it.
+	 * @param matchesAll
+	 *            False if the guess is only the best effort, not consistent
+	 *            with every feedback.
+	 */
+	public void recordGuess(int nrCandidatesGenerated, boolean matchesAll)
+	{
+		nrGuesses++;
+		candidatesPerGuess.record(nrCandidatesGenerated);
+		if (!matchesAll)
+			nrFallbacks++;
+	}
+
+	/**
+	 * Records a guess taken from an opening book or decision tree.
+	 */
+	public void recordLookedUpGuess()
+	{
+		nrGuesses++;
+		nrLookedUpGuesses++;
+	}
+
+	/**
+	 * Records the number of codes still consistent with every feedback at
+	 * the start of a turn.
+	 *
+	 * @param size
+	 */
+	public void recordCandidateSetSize(long size)
+	{
+		candidateSetSizes.record(size);
+	}
+
+	/**
+	 *
+	 * @param nrChecks
+	 *            The number of codes checked against a feedback.
+	 */
+	public void addConsistencyChecks(long nrChecks)
+	{
+		nrConsistencyChecks += nrChecks;
+	}
+
+	/**
+	 *
+	 * @param nanos
+	 *            Time spent producing codes to consider.
+	 */
+	public void addGeneratingNanos(long nanos)
+	{
+		generatingNanos += nanos;
+	}
+
+	/**
+	 *
+	 * @param nanos
+	 *            Time spent checking codes against the feedback.
+	 */
+	public void addValidatingNanos(long nanos)
+	{
+		validatingNanos += nanos;
+	}
+
+	/**
+	 * Adds the metrics of another guesser to these.
+	 *
+	 * @param other
+	 */
+	public void merge(GuesserMetrics other)
+	{
+		nrGuesses += other.nrGuesses;
+		nrLookedUpGuesses += other.nrLookedUpGuesses;
+		nrFallbacks += other.nrFallbacks;
+		nrConsistencyChecks += other.nrConsistencyChecks;
+		generatingNanos += other.generatingNanos;
+		validatingNanos += other.validatingNanos;
+		candidatesPerGuess.merge(other.candidatesPerGuess);
+		candidateSetSizes.merge(other.candidateSetSizes);
+	}
+
+	/**
+	 *
+	 * @return The number of guesses made.
+	 */
+	public long getNrGuesses()
+	{
+		return nrGuesses;
+	}
+
+	/**
+	 *
+	 * @return The number of guesses taken from a book or tree.
+	 */
+	public long getNrLookedUpGuesses()
+	{
+		return nrLookedUpGuesses;
+	}
+
+	/**
+	 *
+	 * @return The number of guesses that were not consistent with every
+	 *         feedback because the search gave up.
+	 */
+	public long getNrFallbacks()
+	{
+		return nrFallbacks;
+	}
+
+	/**
+	 *
+	 * @return The number of codes checked against a feedback.
+	 */
+	public long getNrConsistencyChecks()
+	{
+		return nrConsistencyChecks;
+	}
+
+	/**
+	 *
+	 * @return Time spent producing codes to consider, in nanoseconds.
+	 */
+	public long getGeneratingNanos()
+	{
+		return generatingNanos;
+	}
+
+	/**
+	 *
+	 * @return Time spent checking codes against the feedback, in
+	 *         nanoseconds.
+	 */
+	public long getValidatingNanos()
+	{
+		return validatingNanos;
+	}
+
+	/**
+	 *
+	 * @return The number of codes considered per searched guess.
+	 */
+	public Histogram getCandidatesPerGuess()
+	{
+		return candidatesPerGuess;
+	}
+
+	/**
+	 *
+	 * @return The number of consistent codes at the start of each turn, for
+	 *         guessers that keep them.
+	 */
+	public Histogram getCandidateSetSizes()
+	{
+		return candidateSetSizes;
+	}
+
+	public String toString()
+	{
+		return "\tGUESSES: " + nrGuesses + " (" + nrLookedUpGuesses
+				+ " looked up, " + nrFallbacks + " best effort)\n"
+				+ "\tCANDIDATES PER GUESS: " + candidatesPerGuess + "\n"
+				+ "\tCONSISTENT CODES PER TURN: " + candidateSetSizes + "\n"
+				+ "\tCONSISTENCY CHECKS: " + nrConsistencyChecks + "\n"
+				+ "\tGENERATING TIME: " + generatingNanos / 1000000 + " ms\n"
+				+ "\tVALIDATING TIME: " + validatingNanos / 1000000 + " ms";
+	}
+}
@@ -0,0 +1,124 @@
+package game;
+
+/**
+ * A Histogram counts non-negative values in buckets that double in width, so
+ * recording a value is a few instructions and the histogram stays the same
+ * size however large the values get. Bucket 0 holds zeros and bucket b holds
+ * the values from 2^(b-1) to 2^b - 1. Percentiles are therefore only known up
+ * to their bucket and are reported as the bucket's upper bound.
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ *
+ */
+public class Histogram
+{
+	private static final int NR_BUCKETS = 65;
+
+	private final long[] bucketCounts = new long[NR_BUCKETS];
+	private long count = 0;
+	private long sum = 0;
+	private long max = 0;
+
+	/**
+	 * Records a value.
+	 *
+	 * @param value
+	 *            A non-negative value.
+	 */
+	public void record(long value)
+	{
+		bucketCounts[64 - Long.numberOfLeadingZeros(value)]++;
+		count++;
+		sum += value;
+		if (value > max)
+			max = value;
+	}
+
+	/**
+	 * Adds the values recorded by another histogram to this one.
+	 *
+	 * @param other
+	 */
+	public void merge(Histogram other)
+	{
+		for (int i = 0; i < NR_BUCKETS; i++)
+			bucketCounts[i] += other.bucketCounts[i];
+		count += other.count;
+		sum += other.sum;
+		if (other.max > max)
+			max = other.max;
+	}
+
+	/**
+	 *
+	 * @return The number of values recorded.
+	 */
+	public long getCount()
+	{
+		return count;
+	}
+
+	/**
+	 *
+	 * @return The sum of the values recorded.
+	 */
+	public long getSum()
+	{
+		return sum;
+	}
+
+	/**
+	 *
+	 * @return The average value, or 0 if none were recorded.
+	 */
+	public double getMean()
+	{
+		return count == 0 ? 0.0 : sum / (double) count;
+	}
+
+	/**
+	 *
+	 * @return The largest value recorded.
+	 */
+	public long getMax()
+	{
+		return max;
+	}
+
+	/**
+	 *
+	 * @param bucket
+	 * @return The number of values recorded in a bucket.
+	 */
+	public long getBucketCount(int bucket)
+	{
+		return bucketCounts[bucket];
+	}
+
+	/**
+	 *
+	 * @param fraction
+	 *            The fraction of values, between 0 and 1.
+	 * @return An upper bound on the value below which that fraction of the
+	 *         recorded values fall.
+	 */
+	public long getPercentile(double fraction)
+	{
+		long rank = (long) Math.ceil(fraction * count);
+		long seen = 0;
+		for (int i = 0; i < NR_BUCKETS; i++)
+		{
+			seen += bucketCounts[i];
+			if (seen >= rank && seen > 0)
+				return Math.min(max, i == 0 ? 0 : (i == 64 ? Long.MAX_VALUE
+						: (1L << i) - 1));
+		}
+		return max;
+	}
+
+	public String toString()
+	{
+		return String.format("count=%d mean=%.1f p50<=%d p99<=%d max=%d",
+				count, getMean(), getPercentile(0.5), getPercentile(0.99), max);
+	}
+}
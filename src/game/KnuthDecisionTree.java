@@ -0,0 +1,346 @@
+package game;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import data.AtomicFileWriter;
+import data.CodeSequence;
+import data.CodeSpace;
+import data.FeedbackSpace;
+import data.FeedbackTable;
+
+/**
+ * A KnuthDecisionTree holds every move the Knuth guesser can make for a code
+ * space, so that a guess is a single array lookup instead of a search. Node i
+ * holds the rank of its guess in guessRanks[i], and the node reached after
+ * feedback f is children[i * nrFeedbacks + f], or -1 if no code gives that
+ * feedback. The root holds the opening guess.
+ *
+ * The tree is compiled by playing the guesser against every code of the space,
+ * which is only feasible for small spaces, and is kept in a file next to the
+ * feedback tables so it is only compiled once.
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ *
+ */
+public class KnuthDecisionTree
+{
+	public static final int ROOT = 0;
+	public static final int MAX_COMPILED_SPACE_SIZE = 1 << 13;
+
+	private static final int MAGIC = 0x4D4D4454; // "MMDT"
+
+	private static final HashMap<String, KnuthDecisionTree> trees = new HashMap<String, KnuthDecisionTree>();
+
+	private final int nrPegs;
+	private final int nrColors;
+	private final PartitionHeuristic heuristic;
+	private final int nrFeedbacks;
+	private final int[] guessRanks;
+	private final int[] children;
+	private final CodeSequence[] guesses;
+
+	/**
+	 * Constructs a tree from its arrays.
+	 *
+	 * @param nrPegs
+	 * @param nrColors
+	 * @param heuristic
+	 * @param guessRanks
+	 * @param children
+	 */
+	private KnuthDecisionTree(int nrPegs, int nrColors,
+			PartitionHeuristic heuristic, int[] guessRanks, int[] children)
+	{
+		this.nrPegs = nrPegs;
+		this.nrColors = nrColors;
+		this.heuristic = heuristic;
+		this.nrFeedbacks = FeedbackSpace.forPegs(nrPegs).size();
+		this.guessRanks = guessRanks;
+		this.children = children;
+
+		CodeSpace space = CodeSpace.forSpace(nrPegs, nrColors);
+		guesses = new CodeSequence[guessRanks.length];
+		for (int i = 0; i < guessRanks.length; i++)
+			guesses[i] = space.sequenceAt(guessRanks[i]);
+	}
+
+	/**
+	 * Returns the shared tree for a code space and heuristic, reading it from
+	 * its file or compiling and saving it if needed.
+	 *
+	 * @param nrPegs
+	 * @param nrColors
+	 * @param heuristic
+	 * @param nrThreads
+	 *            The number of threads to compile the tree with.
+	 * @return The tree, or null if the space is too large to compile.
+	 */
+	public static synchronized KnuthDecisionTree forSpace(int nrPegs,
+			int nrColors, PartitionHeuristic heuristic, int nrThreads)
+	{
+		if (!canCompile(nrPegs, nrColors))
+			return null;
+
+		String name = "knuth-" + nrPegs + "x" + nrColors + "-"
+				+ heuristic.getName() + ".tree";
+		KnuthDecisionTree tree = trees.get(name);
+		if (tree != null)
+			return tree;
+
+		File directory = FeedbackTable.getTableDirectory();
+		File file = new File(directory, name);
+		try
+		{
+			if (file.isFile())
+				tree = load(file);
+		}
+		catch (IOException e)
+		{
+			System.err.println("Cannot read decision tree " + file + ": "
+					+ e.getMessage());
+		}
+		if (tree == null || !tree.isFor(nrPegs, nrColors, heuristic))
+		{
+			tree = compile(nrPegs, nrColors, heuristic, nrThreads);
+			try
+			{
+				tree.save(directory, file);
+			}
+			catch (IOException e)
+			{
+				System.err.println("Cannot save decision tree " + file + ": "
+						+ e.getMessage());
+			}
+		}
+
+		trees.put(name, tree);
+		return tree;
+	}
+
+	/**
+	 *
+	 * @param nrPegs
+	 * @param nrColors
+	 * @return True if the guesser can be played against every code of the
+	 *         space in reasonable time.
+	 */
+	public static boolean canCompile(int nrPegs, int nrColors)
+	{
+		return KnuthGuesser.canSolve(nrPegs, nrColors)
+				&& CodeSpace.forSpace(nrPegs, nrColors).size() <= MAX_COMPILED_SPACE_SIZE;
+	}
+
+	/**
+	 * Compiles the tree by playing a guesser against every code of the space
+	 * and recording each guess under the node it was made from. Since the
+	 * guesser is deterministic, every history consistent with some code ends
+	 * up in the tree.
+	 *
+	 * @param nrPegs
+	 * @param nrColors
+	 * @param heuristic
+	 * @param nrThreads
+	 *            The number of threads the guesser evaluates guesses on.
+	 * @return The compiled tree.
+	 */
+	public static KnuthDecisionTree compile(int nrPegs, int nrColors,
+			PartitionHeuristic heuristic, int nrThreads)
+	{
+		CodeSpace space = CodeSpace.forSpace(nrPegs, nrColors);
+		FeedbackSpace feedbackSpace = FeedbackSpace.forPegs(nrPegs);
+		int nrFeedbacks = feedbackSpace.size();
+		int winningOrdinal = feedbackSpace.winningOrdinal();
+		KnuthGuesser guesser = new KnuthGuesser(nrPegs, nrColors, heuristic,
+				nrThreads);
+
+		int[] guessRanks = new int[16];
+		int[] children = new int[16 * nrFeedbacks];
+		Arrays.fill(children, -1);
+		int nrNodes = 0;
+
+		for (int secretRank = 0; secretRank < space.size(); secretRank++)
+		{
+			CodeSequence secret = space.sequenceAt(secretRank);
+			guesser.reset();
+			int parent = -1;
+			int feedbackOrdinal = -1;
+
+			while (true)
+			{
+				int guessRank = (int) space.rankOf(guesser.guess().getPacked());
+				int node = (parent < 0) ? (nrNodes > 0 ? ROOT : -1)
+						: children[parent * nrFeedbacks + feedbackOrdinal];
+				if (node < 0)
+				{
+					if (nrNodes == guessRanks.length)
+					{
+						guessRanks = Arrays.copyOf(guessRanks, nrNodes * 2);
+						children = Arrays.copyOf(children, nrNodes * 2
+								* nrFeedbacks);
+						Arrays.fill(children, nrNodes * nrFeedbacks,
+								children.length, -1);
+					}
+					node = nrNodes++;
+					guessRanks[node] = guessRank;
+					if (parent >= 0)
+						children[parent * nrFeedbacks + feedbackOrdinal] = node;
+				}
+				else if (guessRanks[node] != guessRank)
+					throw new IllegalStateException(
+							"The guesser made different guesses for the same history");
+
+				feedbackOrdinal = secret.getFeedbackOrdinalFor(space
+						.sequenceAt(guessRank));
+				if (feedbackOrdinal == winningOrdinal)
+					break;
+				guesser.giveFeedbackForLastGuess(feedbackSpace
+						.get(feedbackOrdinal));
+				parent = node;
+			}
+		}
+
+		return new KnuthDecisionTree(nrPegs, nrColors, heuristic,
+				Arrays.copyOf(guessRanks, nrNodes), Arrays.copyOf(children,
+						nrNodes * nrFeedbacks));
+	}
+
+	/**
+	 * Reads a tree from a file.
+	 *
+	 * @param file
+	 * @return The tree.
+	 * @throws IOException
+	 *             If the file cannot be read or does not hold a tree.
+	 */
+	public static KnuthDecisionTree load(File file) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file)));
+		try
+		{
+			if (in.readInt() != MAGIC)
+				throw new IOException("Not a decision tree file");
+			int nrPegs = in.readInt();
+			int nrColors = in.readInt();
+			PartitionHeuristic heuristic = PartitionHeuristic.forName(in
+					.readUTF());
+			int nrNodes = in.readInt();
+			if (heuristic == null || !canCompile(nrPegs, nrColors)
+					|| nrNodes <= 0)
+				throw new IOException("Corrupt decision tree header");
+
+			int nrFeedbacks = FeedbackSpace.forPegs(nrPegs).size();
+			long spaceSize = CodeSpace.forSpace(nrPegs, nrColors).size();
+			int[] guessRanks = new int[nrNodes];
+			int[] children = new int[nrNodes * nrFeedbacks];
+			for (int i = 0; i < guessRanks.length; i++)
+			{
+				guessRanks[i] = in.readInt();
+				if (guessRanks[i] < 0 || guessRanks[i] >= spaceSize)
+					throw new IOException("Corrupt decision tree guess");
+			}
+			for (int i = 0; i < children.length; i++)
+			{
+				children[i] = in.readInt();
+				if (children[i] < -1 || children[i] >= nrNodes)
+					throw new IOException("Corrupt decision tree node");
+			}
+			return new KnuthDecisionTree(nrPegs, nrColors, heuristic,
+					guessRanks, children);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes the tree through an AtomicFileWriter, so an interrupted run never
+	 * leaves a partial tree behind.
+	 *
+	 * @param directory
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(File directory, File file) throws IOException
+	{
+		new AtomicFileWriter()
+		{
+			protected void write(File tempFile) throws IOException
+			{
+				DataOutputStream out = new DataOutputStream(
+						new BufferedOutputStream(new FileOutputStream(tempFile)));
+				try
+				{
+					out.writeInt(MAGIC);
+					out.writeInt(nrPegs);
+					out.writeInt(nrColors);
+					out.writeUTF(heuristic.getName());
+					out.writeInt(guessRanks.length);
+					for (int i = 0; i < guessRanks.length; i++)
+						out.writeInt(guessRanks[i]);
+					for (int i = 0; i < children.length; i++)
+						out.writeInt(children[i]);
+				}
+				finally
+				{
+					out.close();
+				}
+			}
+		}.writeTo(directory, file);
+	}
+
+	/**
+	 *
+	 * @param node
+	 * @return The guess to make at a node.
+	 */
+	public CodeSequence guessAt(int node)
+	{
+		return guesses[node];
+	}
+
+	/**
+	 *
+	 * @param node
+	 * @param feedbackOrdinal
+	 * @return The node reached from a node after the feedback, or -1 if no
+	 *         code of the space gives that feedback.
+	 */
+	public int childOf(int node, int feedbackOrdinal)
+	{
+		return children[node * nrFeedbacks + feedbackOrdinal];
+	}
+
+	/**
+	 *
+	 * @return The number of nodes, which is also the number of distinct
+	 *         situations the guesser can face.
+	 */
+	public int getNrNodes()
+	{
+		return guessRanks.length;
+	}
+
+	/**
+	 *
+	 * @param nrPegs
+	 * @param nrColors
+	 * @param heuristic
+	 * @return True if this tree was compiled for the given game.
+	 */
+	public boolean isFor(int nrPegs, int nrColors, PartitionHeuristic heuristic)
+	{
+		return this.nrPegs == nrPegs && this.nrColors == nrColors
+				&& this.heuristic == heuristic;
+	}
+}
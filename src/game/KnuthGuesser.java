@@ -1,37 +1,240 @@
 package game;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.LongConsumer;
 
+import data.BatchFeedbackKernel;
+import data.CandidateSet;
+import data.CodeBatch;
 import data.CodeSequence;
+import data.CodeSpace;
 import data.Feedback;
+import data.FeedbackSpace;
+import data.FeedbackTable;
+import data.PackedCode;
+import data.SharedPools;
 
 /**
- * The Knuth guessing algorithm guesser. This algorithm only works for the
- * default case of 4 pegs and 6 colors.
- * 
+ * The Knuth guessing algorithm guesser, generalized to any number of pegs and
+ * colors whose candidate bitset fits in memory. It keeps the set of codes that are
+ * still consistent with every feedback and picks the guess that partitions
+ * that set best according to a PartitionHeuristic, preferring consistent
+ * codes and then the lowest code on ties.
+ *
+ * The code space itself is never held: guesses are streamed from a
+ * CodeSpliterator and codes are built from their ranks on demand. The code
+ * space, feedback space and feedback table are shared by every guesser of the
+ * same size, and the candidate set is refilled in place between games. For large
+ * spaces, scoring every code against every consistent code is not feasible,
+ * so the partitions are measured on an evenly spread sample of the consistent
+ * codes and only consistent codes are considered as guesses.
+ *
+ * For small spaces the whole strategy can be compiled into a
+ * KnuthDecisionTree, after which every guess is a single lookup. For larger
+ * ones, an OpeningBook saves searching for the second guess.
+ *
  * @author M. Curtis, M. Edoror and B. Farrington
- * 
+ *
  */
 public class KnuthGuesser implements Guesser
 {
-	private static final int GUESS_SPACE_SIZE = 1296;
-	private static final int FEEDBACK_SPACE_SIZE = 14;
+	public static final int MAX_GUESS_SPACE_SIZE = 1 << 28;
 
-	private ArrayList<CodeSequence> currentGuessSpace;
-	private ArrayList<CodeSequence> entireGuessSpace;
-	private ArrayList<Feedback> feedbackSpace;
+	private static final int DEFAULT_NR_PEGS = 4;
+	private static final int DEFAULT_NR_COLORS = 6;
+	private static final int MAX_SCORED_CODES = 1 << 13;
+	private static final long MAX_SCORES_PER_GUESS = 1L << 26;
+	private static final int GUESSES_PER_TASK = 64;
+
+	private final int nrPegs;
+	private final int nrColors;
+	private final PartitionHeuristic heuristic;
+	private final CandidateSet currentGuessSpace;
+	private final CodeSpace entireGuessSpace;
+	private final FeedbackSpace feedbackSpace;
+	private final FeedbackTable feedbackTable;
+	private CodeSequence openingGuess;
+	private int[] scoredRanks;
+	private CodeBatch scoredCodes;
+	private long[] guessPoolCodes;
 	private CodeSequence lastGuess;
 	private Feedback lastFeedback;
+	private KnuthDecisionTree decisionTree;
+	private int decisionTreeNode;
+	private OpeningBook openingBook;
+	private int nrGuessesMade;
+	private int nrCandidates;
+	private final ForkJoinPool pool;
+	private final GuesserMetrics metrics = new GuesserMetrics();
 
 	/**
-	 * Default constructor.
+	 * Default constructor for the standard game of 4 pegs and 6 colors, which
+	 * evaluates guesses on a single thread.
 	 */
 	public KnuthGuesser()
 	{
+		this(1);
+	}
+
+	/**
+	 * Constructor for the standard game with a number of threads to evaluate
+	 * guesses on.
+	 *
+	 * @param nrThreads
+	 */
+	public KnuthGuesser(int nrThreads)
+	{
+		this(DEFAULT_NR_PEGS, DEFAULT_NR_COLORS, PartitionHeuristic.WORST_CASE,
+				nrThreads);
+	}
+
+	/**
+	 * Constructor with a variable amount of pegs and colors. The chosen guess
+	 * does not depend on the number of threads.
+	 *
+	 * @param nrPegs
+	 * @param nrPegColors
+	 * @param heuristic
+	 *            The rule used to rate guesses.
+	 * @param nrThreads
+	 *            The number of threads to evaluate guesses on.
+	 */
+	public KnuthGuesser(int nrPegs, int nrPegColors,
+			PartitionHeuristic heuristic, int nrThreads)
+	{
+		if (!canSolve(nrPegs, nrPegColors))
+			throw new IllegalArgumentException("Cannot enumerate " + nrPegs
+					+ " pegs with " + nrPegColors + " colors");
+
+		this.nrPegs = nrPegs;
+		this.nrColors = nrPegColors;
+		this.heuristic = heuristic;
+		pool = SharedPools.forThreads(nrThreads);
+		entireGuessSpace = CodeSpace.forSpace(nrPegs, nrPegColors);
+		feedbackSpace = FeedbackSpace.forPegs(nrPegs);
+		feedbackTable = FeedbackTable.forSpace(nrPegs, nrPegColors);
+		currentGuessSpace = new CandidateSet((int) entireGuessSpace.size());
+		nrCandidates = currentGuessSpace.size();
+		openingGuess = createOpeningGuess();
+	}
+
+	/**
+	 *
+	 * @param nrPegs
+	 * @param nrPegColors
+	 * @return True if the candidates of the code space fit in a bitset.
+	 */
+	public static boolean canSolve(int nrPegs, int nrPegColors)
+	{
+		if (!PackedCode.isPackable(nrPegs, nrPegColors))
+			return false;
+		long spaceSize = PackedCode.spaceSize(nrPegs, nrPegColors);
+		return spaceSize > 0 && spaceSize <= MAX_GUESS_SPACE_SIZE;
+	}
+
+	/**
+	 * Makes the guesser follow a compiled decision tree instead of searching
+	 * for every guess.
+	 *
+	 * @param tree
+	 *            A tree compiled for the same game, or null to search again.
+	 */
+	public void setDecisionTree(KnuthDecisionTree tree)
+	{
+		if (tree != null && !tree.isFor(nrPegs, nrColors, heuristic))
+			throw new IllegalArgumentException(
+					"The decision tree was compiled for another game");
+		decisionTree = tree;
 		reset();
-		entireGuessSpace = createGuessSpace();
-		feedbackSpace = createFeedbackSpace();
+	}
+
+	/**
+	 * Makes the guesser open with the first guess of an opening book and take
+	 * its second guess from it instead of searching for it.
+	 *
+	 * @param book
+	 *            A book made for the same game, or null to search again.
+	 */
+	public void setOpeningBook(OpeningBook book)
+	{
+		if (book != null && !book.isFor(nrPegs, nrColors, heuristic))
+			throw new IllegalArgumentException(
+					"The opening book was made for another game");
+		openingBook = book;
+		setOpeningGuess((book != null) ? book.getFirstGuess()
+				: createOpeningGuess());
+	}
+
+	/**
+	 * Makes the guesser open with the given guess from the next game on.
+	 *
+	 * @param guess
+	 */
+	void setOpeningGuess(CodeSequence guess)
+	{
+		openingGuess = guess;
+	}
+
+	/**
+	 * Searches the opening guess that partitions the code space best under
+	 * the heuristic. Codes that differ only by the order of their pegs or by
+	 * renaming colors partition the code space alike, so only one code is
+	 * rated for every way of splitting the pegs into runs of one color: 1 1 1
+	 * 1, 1 1 1 2, 1 1 2 2, 1 1 2 3 and 1 2 3 4 in the standard game. Ties go to
+	 * the lowest code. The guesser is reset.
+	 *
+	 * @return The best opening guess.
+	 */
+	public CodeSequence searchOpeningGuess()
+	{
+		reset();
+		prepareGuessEvaluation();
+		ArrayList<Long> ranks = new ArrayList<Long>();
+		addOpeningGuessRanks(new int[nrPegs], 0, 1, nrPegs, ranks);
+		Collections.sort(ranks);
+
+		GuessRater rater = new GuessRater();
+		for (long rank : ranks)
+			rater.accept(entireGuessSpace.codeAt(rank));
+		metrics.recordGuess(ranks.size(), true);
+		return entireGuessSpace.sequenceAt(rater.bestGuess.rank);
+	}
+
+	/**
+	 * Fills in the pegs from the given one on with runs of increasing colors,
+	 * no run longer than the one before, and adds the rank of every code made.
+	 *
+	 * @param pegs
+	 * @param from
+	 *            The first peg to fill in.
+	 * @param color
+	 *            The color of the next run.
+	 * @param maxRunLength
+	 * @param ranks
+	 */
+	private void addOpeningGuessRanks(int[] pegs, int from, int color,
+			int maxRunLength, ArrayList<Long> ranks)
+	{
+		if (from == pegs.length)
+		{
+			ranks.add((long) rankOf(new CodeSequence(pegs)));
+			return;
+		}
+		if (color > nrColors)
+			return;
+
+		for (int runLength = Math.min(maxRunLength, pegs.length - from); runLength > 0; runLength--)
+		{
+			for (int i = from; i < from + runLength; i++)
+				pegs[i] = color;
+			addOpeningGuessRanks(pegs, from + runLength, color + 1, runLength,
+					ranks);
+		}
 	}
 
 	/**
@@ -39,162 +242,313 @@ public class KnuthGuesser implements Guesser
 	 */
 	public void giveFeedbackForLastGuess(Feedback feedback)
 	{
-		lastFeedback = feedback;
+		lastFeedback = feedbackSpace.intern(feedback);
 	}
 
 	/**
-	 * Generates a first guess which can eliminate at most 3 colors and at least
-	 * 1.
+	 * Opens with the first guess of the opening book, or else with a guess
+	 * which can eliminate at most 3 colors and at least 1 in the standard game,
+	 * then picks the best partitioning guess.
 	 */
 	public CodeSequence guess()
 	{
+		SolverEvents.Guess event = new SolverEvents.Guess();
+		event.begin();
+		long generatedBefore = metrics.getCandidatesPerGuess().getSum();
+		CodeSequence guess = chooseGuess();
+		event.commitFor(this, nrPegs, nrColors, nrGuessesMade,
+				(decisionTree == null) ? nrCandidates : -1,
+				metrics.getCandidatesPerGuess().getSum() - generatedBefore);
+		return guess;
+	}
+
+	private CodeSequence chooseGuess()
+	{
+		if (decisionTree != null)
+			return guessFromDecisionTree();
+
+		nrGuessesMade++;
 		if (lastGuess == null)
 		{
-			lastGuess = new CodeSequence(new int[] { 1, 1, 2, 3 });
+			metrics.recordLookedUpGuess();
+			lastGuess = openingGuess;
 			return lastGuess;
 		}
 
+		SolverEvents.Filter filterEvent = new SolverEvents.Filter();
+		filterEvent.begin();
+		long startNanos = System.nanoTime();
+		metrics.addConsistencyChecks(nrCandidates);
 		removeImpossibleGuessesFromGuessSpace();
+		int nrCandidatesBefore = nrCandidates;
+		nrCandidates = currentGuessSpace.size();
+		long filteredNanos = System.nanoTime();
+		filterEvent.commitFor(nrPegs, nrColors, nrCandidatesBefore, nrCandidates);
+		metrics.addValidatingNanos(filteredNanos - startNanos);
+		metrics.recordCandidateSetSize(nrCandidates);
 
-		if (currentGuessSpace.size() == 1)
-			return currentGuessSpace.get(0);
+		if (nrCandidates == 0)
+			throw new IllegalStateException(
+					"No code gives the feedback received so far");
 
-		CodeSequence bestGuess = null;
-		int bestSpaceReduction = 0;
-		int currentLowestReductionForGuess;
-		int reductionForGuess;
+		if (openingBook != null && nrGuessesMade == 2)
+		{
+			metrics.recordLookedUpGuess();
+			lastGuess = openingBook.getSecondGuess(lastFeedback);
+			return lastGuess;
+		}
 
-		for (int i = 0; i < entireGuessSpace.size(); i++)
+		if (nrCandidates == 1)
 		{
-			currentLowestReductionForGuess = GUESS_SPACE_SIZE;
-			for (int j = 0; j < feedbackSpace.size(); j++)
-			{
-				reductionForGuess = getCountOfImpossibleGuesses(
-						entireGuessSpace.get(i), feedbackSpace.get(j));
+			metrics.recordGuess(1, true);
+			lastGuess = entireGuessSpace.sequenceAt(currentGuessSpace.first());
+			return lastGuess;
+		}
 
-				if (reductionForGuess < currentLowestReductionForGuess)
-				{
-					currentLowestReductionForGuess = reductionForGuess;
-				}
-			}
+		prepareGuessEvaluation();
+		Spliterator.OfLong guessPool = (guessPoolCodes == null) ? entireGuessSpace.spliterator()
+				: Spliterators.spliterator(guessPoolCodes, Spliterator.ORDERED
+						| Spliterator.IMMUTABLE);
+		GuessScoringTask task = new GuessScoringTask(guessPool);
+		GuessScore best = (pool == null) ? task.compute() : pool.invoke(task);
+		metrics.addGeneratingNanos(System.nanoTime() - filteredNanos);
+		metrics.recordGuess((guessPoolCodes == null) ? (int) entireGuessSpace.size()
+				: guessPoolCodes.length, true);
 
-			if (bestGuess == null
-					|| currentLowestReductionForGuess > bestSpaceReduction)
-			{
-				bestGuess = entireGuessSpace.get(i);
-				bestSpaceReduction = currentLowestReductionForGuess;
-			}
-		}
+		lastGuess = entireGuessSpace.sequenceAt(best.rank);
+		return lastGuess;
+	}
 
-		lastGuess = bestGuess;
-		return bestGuess;
+	/**
+	 * Moves down the decision tree along the last feedback.
+	 *
+	 * @return The guess at the new node.
+	 */
+	private CodeSequence guessFromDecisionTree()
+	{
+		metrics.recordLookedUpGuess();
+		decisionTreeNode = (lastGuess == null) ? KnuthDecisionTree.ROOT
+				: decisionTree.childOf(decisionTreeNode,
+						lastFeedback.getOrdinal());
+		if (decisionTreeNode < 0)
+			throw new IllegalStateException(
+					"No code gives the feedback received so far");
+		lastGuess = decisionTree.guessAt(decisionTreeNode);
+		return lastGuess;
 	}
 
 	/**
-	 * Removes guesses for which gave no feedback.
+	 * Picks the codes to partition and the guesses to try so that a turn
+	 * stays within MAX_SCORES_PER_GUESS scores.
 	 */
-	private void removeImpossibleGuessesFromGuessSpace()
+	private void prepareGuessEvaluation()
 	{
-		Iterator<CodeSequence> itr = currentGuessSpace.listIterator();
-		CodeSequence currentCode = null;
+		scoredRanks = currentGuessSpace.toSpreadRankArray(MAX_SCORED_CODES);
+		if (feedbackTable == null)
+		{
+			scoredCodes = new CodeBatch(nrPegs, nrColors, scoredRanks.length);
+			for (int i = 0; i < scoredRanks.length; i++)
+				scoredCodes.add(entireGuessSpace.codeAt(scoredRanks[i]));
+		}
 
-		while (itr.hasNext())
+		int maxGuesses = (int) Math.max(1, MAX_SCORES_PER_GUESS
+				/ scoredRanks.length);
+		if (entireGuessSpace.size() <= maxGuesses)
+			guessPoolCodes = null;
+		else
 		{
-			currentCode = itr.next();
-			if (!currentCode.getFeedbackFor(lastGuess).equals(lastFeedback))
-				itr.remove();
+			int[] guessPoolRanks = currentGuessSpace.toSpreadRankArray(maxGuesses);
+			guessPoolCodes = new long[guessPoolRanks.length];
+			for (int i = 0; i < guessPoolRanks.length; i++)
+				guessPoolCodes[i] = entireGuessSpace.codeAt(guessPoolRanks[i]);
 		}
 	}
 
 	/**
-	 * Counts the number of impossible guesses.
-	 * 
-	 * @param guess
-	 * @param feedback
-	 * @return
+	 * Rates the guesses it is given in order and remembers the best one.
 	 */
-	private int getCountOfImpossibleGuesses(CodeSequence guess,
-			Feedback feedback)
+	private class GuessRater implements LongConsumer
 	{
-		int nrOfImpossibleGuesses = 0;
-		Iterator<CodeSequence> itr = currentGuessSpace.listIterator();
-		CodeSequence currentCode = null;
+		private final int[] partitionSizes = new int[feedbackSpace.size()];
+		private final BatchFeedbackKernel.Scratch scratch = new BatchFeedbackKernel.Scratch(
+				nrPegs, nrColors, scoredRanks.length);
+		private GuessScore bestGuess;
 
-		while (itr.hasNext())
+		public void accept(long guess)
 		{
-			currentCode = itr.next();
-			if (!currentCode.getFeedbackFor(guess).equals(feedback))
-			{
-				nrOfImpossibleGuesses++;
-			}
+			int guessRank = (int) entireGuessSpace.rankOf(guess);
+			fillPartitionSizes(guessRank, guess, partitionSizes, scratch);
+			double score = heuristic.score(partitionSizes, scoredRanks.length);
+			boolean isCandidate = currentGuessSpace.contains(guessRank);
+
+			if (bestGuess == null || bestGuess.isWorseThan(score, isCandidate))
+				bestGuess = new GuessScore(guessRank, score, isCandidate);
 		}
+	}
 
-		return nrOfImpossibleGuesses;
+	/**
+	 * Removes guesses for which gave no feedback.
+	 */
+	private void removeImpossibleGuessesFromGuessSpace()
+	{
+		if (feedbackTable != null)
+			currentGuessSpace.retainFeedback(feedbackTable, rankOf(lastGuess),
+					lastFeedback.getOrdinal());
+		else
+			currentGuessSpace.retainFeedback(lastGuess.getPacked(), nrPegs,
+					nrColors, lastFeedback.getOrdinal());
 	}
 
 	/**
-	 * Resets the state for the guesser.
+	 * Splits the scored codes by the feedback each would give for a guess,
+	 * counting the size of every partition in a single pass. Without a
+	 * feedback table the codes are scored by the batch feedback kernel.
+	 *
+	 * @param guessRank
+	 * @param guess
+	 *            The packed guess.
+	 * @param partitionSizes
+	 *            The array to fill, indexed by feedback ordinal.
+	 * @param scratch
+	 *            Working space for the kernel.
 	 */
-	public void reset()
+	private void fillPartitionSizes(int guessRank, long guess,
+			int[] partitionSizes, BatchFeedbackKernel.Scratch scratch)
 	{
-		currentGuessSpace = createGuessSpace();
-		lastGuess = null;
-		lastFeedback = null;
+		if (feedbackTable == null)
+		{
+			BatchFeedbackKernel.getInstance().fillPartitionSizes(scoredCodes,
+					guess, partitionSizes, scratch);
+			return;
+		}
+
+		for (int i = 0; i < partitionSizes.length; i++)
+			partitionSizes[i] = 0;
+		for (int i = 0; i < scoredRanks.length; i++)
+			partitionSizes[feedbackTable.getFeedbackOrdinal(guessRank,
+					scoredRanks[i])]++;
 	}
 
 	/**
-	 * Enumerates the entire guess space.
-	 * 
-	 * @return
+	 * Splits the guess pool in halves until the pieces are small enough to
+	 * score directly. Halves are combined the same way the sequential loop
+	 * compares guesses (ties go to the lowest rank), so the result does not
+	 * depend on how the work was split.
 	 */
-	private ArrayList<CodeSequence> createGuessSpace()
+	private class GuessScoringTask extends RecursiveTask<GuessScore>
 	{
-		ArrayList<CodeSequence> guessSpace = new ArrayList<CodeSequence>();
+		private static final long serialVersionUID = 1L;
+
+		private final Spliterator.OfLong guesses;
+
+		GuessScoringTask(Spliterator.OfLong guesses)
+		{
+			this.guesses = guesses;
+		}
 
-		int[] code = { 1, 1, 1, 1 };
-		for (int i = 0; i < GUESS_SPACE_SIZE; i++)
+		protected GuessScore compute()
 		{
-			guessSpace.add(new CodeSequence(code));
-			for (int j = 3; j >= 0; j--)
+			Spliterator.OfLong lowerGuesses = null;
+			if (pool != null && guesses.estimateSize() > GUESSES_PER_TASK)
+				lowerGuesses = guesses.trySplit();
+
+			if (lowerGuesses == null)
 			{
-				if (code[j] == 6)
-				{
-					code[j] = 1;
-				}
-				else
-				{
-					code[j]++;
-					break;
-				}
+				GuessRater rater = new GuessRater();
+				guesses.forEachRemaining(rater);
+				return rater.bestGuess;
 			}
-		}
 
-		return guessSpace;
+			GuessScoringTask lowerHalf = new GuessScoringTask(lowerGuesses);
+			lowerHalf.fork();
+			GuessScore upperBest = compute();
+			GuessScore lowerBest = lowerHalf.join();
+
+			if (lowerBest == null)
+				return upperBest;
+			if (upperBest == null)
+				return lowerBest;
+			return lowerBest.isWorseThan(upperBest.score, upperBest.isCandidate) ? upperBest
+					: lowerBest;
+		}
 	}
 
 	/**
-	 * Creates the feedback space.
-	 * 
-	 * @return
+	 * The rating of one guess.
 	 */
-	private ArrayList<Feedback> createFeedbackSpace()
+	private static class GuessScore
 	{
-		ArrayList<Feedback> feedbackSpace = new ArrayList<Feedback>();
+		final int rank;
+		final double score;
+		final boolean isCandidate;
 
-		int whiteCount = 0;
-		int blackCount = 0;
-		for (int i = 0; i < FEEDBACK_SPACE_SIZE; i++)
+		GuessScore(int rank, double score, boolean isCandidate)
 		{
-			feedbackSpace.add(new Feedback(whiteCount, blackCount));
-			blackCount++;
-			if (blackCount + whiteCount > 4
-					|| (blackCount == 3 && whiteCount == 1))
-			{
-				blackCount = 0;
-				whiteCount++;
-			}
+			this.rank = rank;
+			this.score = score;
+			this.isCandidate = isCandidate;
 		}
 
-		return feedbackSpace;
+		/**
+		 *
+		 * @param otherScore
+		 * @param otherIsCandidate
+		 * @return True if a guess with the given rating should be preferred
+		 *         over this one, not counting ranks.
+		 */
+		boolean isWorseThan(double otherScore, boolean otherIsCandidate)
+		{
+			if (otherScore != score)
+				return otherScore > score;
+			return otherIsCandidate && !isCandidate;
+		}
+	}
+
+	/**
+	 * Finds the position of a code in the entire guess space, which is also
+	 * its position in the feedback table.
+	 *
+	 * @param code
+	 * @return
+	 */
+	private int rankOf(CodeSequence code)
+	{
+		return (int) entireGuessSpace.rankOf(code.getPacked());
+	}
+
+	/**
+	 * Builds the opening guess: two pegs of the first color followed by
+	 * increasing colors, which is 1 1 2 3 in the standard game.
+	 *
+	 * @return
+	 */
+	private CodeSequence createOpeningGuess()
+	{
+		int[] code = new int[nrPegs];
+		for (int i = 0; i < nrPegs; i++)
+			code[i] = (i == 0) ? 1 : (i - 1) % nrColors + 1;
+		return new CodeSequence(code);
+	}
+
+	/**
+	 * Resets the state for the guesser, refilling the candidate set without
+	 * allocating.
+	 */
+	public void reset()
+	{
+		currentGuessSpace.addAll();
+		nrCandidates = currentGuessSpace.size();
+		nrGuessesMade = 0;
+		lastGuess = null;
+		lastFeedback = null;
+	}
+
+	/**
+	 * 
+	 * @return The metrics of every guess made, kept across games.
+	 */
+	public GuesserMetrics getMetrics()
+	{
+		return metrics;
 	}
 }
@@ -2,19 +2,19 @@ package game;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.TreeSet;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import data.CodeSequence;
 import data.ColorSpace;
 import data.Feedback;
+import data.FeedbackSpace;
 import data.PatternStatistic;
+import data.PatternTrie;
 import data.RandomGuess;
 
 /**
  * A learner is the only guesser that keeps track of games. Using a learning
  * parameter that increases with more guesses, it makes better first guesses.
+ * An OpeningBook, when given, takes over the first two guesses.
  * 
  * @author M. Curtis, M. Edoror and B. Farrington
  * 
@@ -23,20 +23,23 @@ public class Learner implements Guesser
 {
 
 	private final static int MAX_NR_GUESSES_TO_GENERATE = 25000;
+	public final static int MAX_NR_PATTERNS = 1 << 16;
 	private ColorSpace pegColors;
 	private int nrPegs;
+	private FeedbackSpace feedbackSpace;
 	private ArrayList<CodeSequence> guesses;
-	private ArrayList<String> codes;
-	private ArrayList<PatternStatistic> patternStats;
+	private PatternTrie patterns;
+	private PatternStatistic latestPatternStat;
 	private ArrayList<PatternStatistic> singleColorStats;
 	private ArrayList<Feedback> feedbackForGuesses;
 	private int bestGuessIndex;
 	private int gamesPlayed;
 	private double gamma;
-	private double colorsPerGame;
 	private ColorSpace workingColorSpace;
 	private boolean bias1Flag;
 	private double threshold;
+	private OpeningBook openingBook;
+	private final GuesserMetrics metrics = new GuesserMetrics();
 
 	boolean guessMatchesAll;
 
@@ -50,32 +53,51 @@ public class Learner implements Guesser
 	{
 		threshold = 0.0;
 		bias1Flag = true;
-		gamesPlayed = -1;
+		gamesPlayed = 0;
 		gamma = 0.1;
 		this.nrPegs = nrPegs;
-		patternStats = new ArrayList<PatternStatistic>();
+		feedbackSpace = FeedbackSpace.forPegs(nrPegs);
 		singleColorStats = new ArrayList<PatternStatistic>();
-		codes = new ArrayList<String>();
 		pegColors = new ColorSpace(nrPegColors);
+		patterns = new PatternTrie(nrPegColors);
 		// This defines the basic color space
 		for (int i = 1; i < nrPegColors; ++i)
 		{
-			singleColorStats.add(new PatternStatistic("" + i));
+			singleColorStats.add(patterns.add(new int[] { i }, 0, 1));
 		}
 		// Any other expression we wish to look for:
 
 		reset();
 	}
 
+	/**
+	 * Makes the learner open with the guesses of a book.
+	 * 
+	 * @param book
+	 *            A book made for the same game, or null to learn openings.
+	 */
+	public void setOpeningBook(OpeningBook book)
+	{
+		if (book != null && !book.isFor(nrPegs, pegColors.length()))
+			throw new IllegalArgumentException(
+					"The opening book was made for another game");
+		openingBook = book;
+	}
+
 	/**
 	 * In between games, the learner studies the past code and updates its
-	 * statistics on each pattern.
+	 * statistics on each pattern. A game given up before it was solved never
+	 * showed the code, so there is nothing to study.
 	 */
 	public void reset()
 	{
-		gamesPlayed++;
-		if (gamesPlayed > 0)
+		if (guesses != null && !feedbackForGuesses.isEmpty()
+				&& feedbackForGuesses.get(feedbackForGuesses.size() - 1)
+						.getBlack() == nrPegs)
+		{
+			gamesPlayed++;
 			threshold = study();
+		}
 		guesses = new ArrayList<CodeSequence>();
 		feedbackForGuesses = new ArrayList<Feedback>();
 		bestGuessIndex = -1;
@@ -85,132 +107,63 @@ public class Learner implements Guesser
 	/**
 	 * This is where the learning occurs. Gamma is increased progressively and
 	 * capped after a certain point. A higher gamma means that the statistics
-	 * are more noteworthy.
+	 * are more noteworthy. The patterns are the runs of two or more pegs of
+	 * past codes, kept in a trie with the single colors, so all their counts
+	 * are updated in one pass over the code. Once MAX_NR_PATTERNS patterns are
+	 * known, the learner keeps counting them but stops adding new ones, so a
+	 * learner that plays for ever takes bounded memory.
 	 * 
 	 * @return
 	 */
 	private double study()
 	{
+		SolverEvents.Study event = new SolverEvents.Study();
+		event.begin();
 		if (gamma < pegColors.length())
 			gamma += Math.pow(gamma, 1.5);
-		Pattern pattern;
-		Matcher matcher;
-		String previousCode;
-		PatternStatistic newColorStat;
-		boolean breakout;
-		String subcode;
-		ArrayList<String> oldSubcodes;
-		double util1 = 0.0, util2 = 0.0;
-
-		oldSubcodes = new ArrayList<String>();
-		previousCode = guesses.get(guesses.size() - 1).toString();
-		codes.add(previousCode);
-
-		// Study current code and extract regex's from it
-		for (int len = 2; len < previousCode.length(); ++len)
+		PatternStatistic newPatternStat;
+		int[] pegs = guesses.get(guesses.size() - 1).toArray();
+
+		// Study current code and extract its runs of pegs
+		for (int len = 2; len <= pegs.length; ++len)
 		{
-			for (int i = 0; i < previousCode.length() - len; ++i)
+			for (int i = 0; i + len <= pegs.length
+					&& patterns.size() < MAX_NR_PATTERNS; ++i)
 			{
-				breakout = false;
-				subcode = previousCode.substring(i, i + len);
-				while (subcode.endsWith(" "))
-					subcode = previousCode.substring(i, i + (len + 1));
-				for (String oldSubcode : oldSubcodes)
-				{
-					if (subcode.equalsIgnoreCase(oldSubcode))
-					{
-						breakout = true;
-						break;
-					}
-				}
-				if (breakout)
-					break;
-				if (subcode.indexOf(" ") == 0)
-					continue;
-
-				newColorStat = new PatternStatistic(subcode);
-				if (!patternStats.contains(newColorStat)
-						&& !singleColorStats.contains(newColorStat))
-					patternStats.add(newColorStat);
-				oldSubcodes.add(subcode);
+				newPatternStat = patterns.add(pegs, i, len);
+				if (newPatternStat != null)
+					latestPatternStat = newPatternStat;
 			}
 		}
-		TreeSet<Character> uniqueColors = new TreeSet<Character>();
-		for (Character c : previousCode.toCharArray())
+		for (int i = 0; i < pegs.length; i++)
 		{
-			if (c != 32)
-				uniqueColors.add(c);
+			if (pegs[i] != pegs[0])
+				bias1Flag = false;
 		}
-		colorsPerGame += uniqueColors.size() * 1.0;
-		System.out.println("Colors per game: " + colorsPerGame);
-
-		colorsPerGame /= gamesPlayed;
-		System.out.println("Colors per game: " + colorsPerGame);
 
-		// Evaluate all probabilities for regex's
-		for (PatternStatistic stat : patternStats)
-		{
-			pattern = Pattern.compile(stat.getRegex());
-			matcher = pattern.matcher(previousCode);
-			while (matcher.find())
-			{
-				stat.increaseCount();
-			}
-			stat.calcProbability(nrPegs * gamesPlayed);
-		}
+		// Count all patterns in the code, then evaluate the probabilities of
+		// the colors, which rank them
+		patterns.count(pegs);
 		for (PatternStatistic stat : singleColorStats)
-		{
-			pattern = Pattern.compile(stat.getRegex());
-			matcher = pattern.matcher(previousCode);
-			while (matcher.find())
-			{
-				stat.increaseCount();
-			}
 			stat.calcProbability(nrPegs * gamesPlayed);
-		}
 
-		PatternStatistic mostSignificant = singleColorStats.get(0);
-		for (PatternStatistic stat : singleColorStats)
+		// The threshold is the utility of the latest pattern learned
+		double utility;
+		if (latestPatternStat != null)
 		{
-			util1 = gamma * (stat.getProbability() + (stat.length() * 1.2));
-			util2 = gamma
-					* (mostSignificant.getProbability() + (mostSignificant.length() * 1.5));
-
-			if (util1 > util2 && stat.getCount() > 1)
-			{
-				mostSignificant = stat;
-			}
+			latestPatternStat.calcProbability(nrPegs * gamesPlayed);
+			utility = gamma
+					* (latestPatternStat.getProbability() + (latestPatternStat.length() * 1.5));
 		}
-		for (PatternStatistic patt : patternStats)
+		else
 		{
-			util1 = gamma * (patt.getProbability() + (patt.length() * 1.5));
-			util2 = gamma
-					* (mostSignificant.getProbability() + (mostSignificant.length() * 1.5));
-
-			if (util1 > util2 && patt.getCount() > 1)
-			{
-				mostSignificant = patt;
-			}
-		}
-		System.out.println("Most significant pattern: (" + util1 + ") "
-				+ mostSignificant);
-
-		for (int i = 0; i < oldSubcodes.size(); i++)
-		{
-
-			char compare = oldSubcodes.get(i).charAt(0);
-			for (int j = 0; j < oldSubcodes.get(i).length(); j++)
-			{
-				if (compare != oldSubcodes.get(i).charAt(j))
-					bias1Flag = false;
-			}
+			PatternStatistic lastColorStat = singleColorStats.get(singleColorStats.size() - 1);
+			utility = gamma
+					* (lastColorStat.getProbability() + (lastColorStat.length() * 1.2));
 		}
-		System.out.println("The most probable color is "
-				+ findProbableColor(999));
-		System.out.println("The least probable color is "
-				+ findProbableColor(0));
-		System.out.println("Colors per game: " + colorsPerGame);
-		return util1;
+		event.commitFor(nrPegs, pegColors.length(), gamesPlayed,
+				patterns.size());
+		return utility;
 	}
 
 	public boolean biasCheck2()
@@ -239,10 +192,24 @@ public class Learner implements Guesser
 	 * better feedback for the smart random guesser.
 	 */
 	public CodeSequence guess()
+	{
+		SolverEvents.Guess event = new SolverEvents.Guess();
+		event.begin();
+		long generatedBefore = metrics.getCandidatesPerGuess().getSum();
+		CodeSequence guess = chooseGuess();
+		event.commitFor(this, nrPegs, pegColors.length(), guesses.size(), -1,
+				metrics.getCandidatesPerGuess().getSum() - generatedBefore);
+		return guess;
+	}
+
+	private CodeSequence chooseGuess()
 	{
 
 		if (guesses.size() != feedbackForGuesses.size())
 			throw new RuntimeException("Can't guess again until feedback is received for last guess");
+		if (workingColorSpace.length() == 0)
+			throw new IllegalStateException(
+					"No code gives the feedback received so far");
 
 		CodeSequence guess = null;
 		int nrOfGuessMatches = 0;
@@ -252,8 +219,21 @@ public class Learner implements Guesser
 		int nrGuessesGenerated = 0;
 		int[] guessArray = new int[this.nrPegs];
 
+		if (openingBook != null && guesses.size() < 2)
+		{
+			guess = guesses.isEmpty() ? openingBook.getFirstGuess()
+					: openingBook.getSecondGuess(feedbackForGuesses.get(0));
+			if (guess != null && !guesses.contains(guess))
+			{
+				metrics.recordLookedUpGuess();
+				guesses.add(guess);
+				return guess;
+			}
+		}
+
 		while (!guessMatchesAll)
 		{
+			long startNanos = System.nanoTime();
 			if (guesses.isEmpty() && biasCheck2())
 			{
 				guessArray = new int[this.nrPegs];
@@ -264,17 +244,8 @@ public class Learner implements Guesser
 						guessArray[z] = guessArray[0];
 						continue;
 					}
-					String potentialGuess = findProbableColor(
-							(int) Math.round(z * gamma)).getRegex();
-					if (potentialGuess.contains(" "))
-					{
-						guessArray[z] = Integer.parseInt(potentialGuess.substring(
-								0, potentialGuess.indexOf(" ")));
-					}
-					else
-					{
-						guessArray[z] = Integer.parseInt(potentialGuess);
-					}
+					guessArray[z] = findProbableColor(
+							(int) Math.round(z * gamma)).getPegColorAt(0);
 				}
 
 				guess = new CodeSequence(guessArray);
@@ -311,17 +282,8 @@ public class Learner implements Guesser
 					guessArray = new int[this.nrPegs];
 					for (int z = 0; z < guessArray.length; z++)
 					{
-						String potentialGuess = findProbableColor(
-								(int) Math.round(z * gamma)).getRegex();
-						if (potentialGuess.contains(" "))
-						{
-							guessArray[z] = Integer.parseInt(potentialGuess.substring(
-									0, potentialGuess.indexOf(" ")));
-						}
-						else
-						{
-							guessArray[z] = Integer.parseInt(potentialGuess);
-						}
+						guessArray[z] = findProbableColor(
+								(int) Math.round(z * gamma)).getPegColorAt(0);
 					}
 
 					guess = new CodeSequence(guessArray);
@@ -335,19 +297,25 @@ public class Learner implements Guesser
 						guesses.get(bestGuessIndex),
 						feedbackForGuesses.get(bestGuessIndex));
 
+			long generatedNanos = System.nanoTime();
 			nrOfGuessMatches = 0;
 
+			int nrChecks = 0;
 			for (int i = 0; i < guesses.size(); i++)
 			{
+				nrChecks++;
 				if (guess.equals(guesses.get(i)))
 				{
 					nrOfGuessMatches = 0;
 					break;
 				}
-				if (guess.getFeedbackFor(guesses.get(i)).equals(
-						feedbackForGuesses.get(i)))
+				if (guess.getFeedbackOrdinalFor(guesses.get(i)) == feedbackForGuesses.get(
+						i).getOrdinal())
 					nrOfGuessMatches++;
 			}
+			metrics.addConsistencyChecks(nrChecks);
+			metrics.addGeneratingNanos(generatedNanos - startNanos);
+			metrics.addValidatingNanos(System.nanoTime() - generatedNanos);
 
 			nrGuessesGenerated++;
 
@@ -364,15 +332,17 @@ public class Learner implements Guesser
 
 		}
 
-		System.out.println(nrGuessesGenerated
-				+ " guesses generated-- best guess matches "
-				+ ((guesses.size() == nrOfGuessMatches) ? "all "
-						+ guesses.size() + " previous" : nrOfGuessMatches
-						+ " of " + guesses.size()) + " guesses...");
+		metrics.recordGuess(nrGuessesGenerated,
+				nrOfBestNextGuessMatches == guesses.size());
 		guesses.add(bestNextGuess);
 		return bestNextGuess;
 	}
 
+	public GuesserMetrics getMetrics()
+	{
+		return metrics;
+	}
+
 	/**
 	 * Returns the most probable color. The colors are sorted in ascending
 	 * order.
@@ -398,7 +368,7 @@ public class Learner implements Guesser
 		if (feedbackForGuesses.size() != guesses.size() - 1)
 			throw new RuntimeException("Already gave feedback for last guess");
 
-		feedbackForGuesses.add(feedback);
+		feedbackForGuesses.add(feedbackSpace.intern(feedback));
 
 		CodeSequence lastGuess = guesses.get(guesses.size() - 1);
 		/*
@@ -0,0 +1,298 @@
+package game;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+import data.AtomicFileWriter;
+import data.CodeSequence;
+import data.CodeSpace;
+import data.Feedback;
+import data.FeedbackSpace;
+import data.FeedbackTable;
+
+/**
+ * An OpeningBook holds the best first guess for a game under a heuristic and
+ * the Knuth guesser's second guess for every feedback the first one can get.
+ * These are the same in every game and the most expensive to search for, since
+ * nothing has been ruled out yet, so they are searched once and kept in a file
+ * next to the feedback tables. The file holds the ranks of the guesses, with -1
+ * for feedbacks no code can give.
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ *
+ */
+public class OpeningBook
+{
+	private static final int MAGIC = 0x4D4D4F42; // "MMOB"
+	private static final int VERSION = 2;
+
+	private static final HashMap<String, OpeningBook> books = new HashMap<String, OpeningBook>();
+
+	private final int nrPegs;
+	private final int nrColors;
+	private final PartitionHeuristic heuristic;
+	private final int firstGuessRank;
+	private final int[] secondGuessRanks;
+	private final CodeSequence firstGuess;
+	private final CodeSequence[] secondGuesses;
+
+	/**
+	 * Constructs a book from the ranks of its guesses.
+	 *
+	 * @param nrPegs
+	 * @param nrColors
+	 * @param heuristic
+	 * @param firstGuessRank
+	 * @param secondGuessRanks
+	 *            Indexed by feedback ordinal, -1 where there is no guess.
+	 */
+	private OpeningBook(int nrPegs, int nrColors, PartitionHeuristic heuristic,
+			int firstGuessRank, int[] secondGuessRanks)
+	{
+		this.nrPegs = nrPegs;
+		this.nrColors = nrColors;
+		this.heuristic = heuristic;
+		this.firstGuessRank = firstGuessRank;
+		this.secondGuessRanks = secondGuessRanks;
+
+		CodeSpace space = CodeSpace.forSpace(nrPegs, nrColors);
+		firstGuess = space.sequenceAt(firstGuessRank);
+		secondGuesses = new CodeSequence[secondGuessRanks.length];
+		for (int i = 0; i < secondGuessRanks.length; i++)
+			if (secondGuessRanks[i] >= 0)
+				secondGuesses[i] = space.sequenceAt(secondGuessRanks[i]);
+	}
+
+	/**
+	 * Returns the shared book for a game, reading it from its file or
+	 * searching and saving it if needed.
+	 *
+	 * @param nrPegs
+	 * @param nrColors
+	 * @param heuristic
+	 * @param nrThreads
+	 *            The number of threads to search the guesses with.
+	 * @return The book, or null if the Knuth guesser cannot play the game.
+	 */
+	public static synchronized OpeningBook forSpace(int nrPegs, int nrColors,
+			PartitionHeuristic heuristic, int nrThreads)
+	{
+		if (!KnuthGuesser.canSolve(nrPegs, nrColors))
+			return null;
+
+		String name = "opening-" + nrPegs + "x" + nrColors + "-"
+				+ heuristic.getName() + ".book";
+		OpeningBook book = books.get(name);
+		if (book != null)
+			return book;
+
+		File directory = FeedbackTable.getTableDirectory();
+		File file = new File(directory, name);
+		try
+		{
+			if (file.isFile())
+				book = load(file);
+		}
+		catch (IOException e)
+		{
+			System.err.println("Cannot read opening book " + file + ": "
+					+ e.getMessage());
+		}
+		if (book == null || !book.isFor(nrPegs, nrColors, heuristic))
+		{
+			book = compile(nrPegs, nrColors, heuristic, nrThreads);
+			try
+			{
+				book.save(directory, file);
+			}
+			catch (IOException e)
+			{
+				System.err.println("Cannot save opening book " + file + ": "
+						+ e.getMessage());
+			}
+		}
+
+		books.put(name, book);
+		return book;
+	}
+
+	/**
+	 * Searches the first guess and then the second guess after every feedback
+	 * with a Knuth guesser that opens with it.
+	 *
+	 * @param nrPegs
+	 * @param nrColors
+	 * @param heuristic
+	 * @param nrThreads
+	 *            The number of threads the guesser evaluates guesses on.
+	 * @return The book.
+	 */
+	public static OpeningBook compile(int nrPegs, int nrColors,
+			PartitionHeuristic heuristic, int nrThreads)
+	{
+		CodeSpace space = CodeSpace.forSpace(nrPegs, nrColors);
+		FeedbackSpace feedbackSpace = FeedbackSpace.forPegs(nrPegs);
+		KnuthGuesser guesser = new KnuthGuesser(nrPegs, nrColors, heuristic,
+				nrThreads);
+
+		CodeSequence firstGuess = guesser.searchOpeningGuess();
+		guesser.setOpeningGuess(firstGuess);
+		int firstGuessRank = (int) space.rankOf(firstGuess.getPacked());
+		int[] secondGuessRanks = new int[feedbackSpace.size()];
+		for (int i = 0; i < secondGuessRanks.length; i++)
+		{
+			secondGuessRanks[i] = -1;
+			if (i == feedbackSpace.winningOrdinal())
+				continue;
+
+			guesser.reset();
+			guesser.guess();
+			guesser.giveFeedbackForLastGuess(feedbackSpace.get(i));
+			try
+			{
+				secondGuessRanks[i] = (int) space.rankOf(guesser.guess()
+						.getPacked());
+			}
+			catch (IllegalStateException e)
+			{
+				// No code gives this feedback for the first guess
+			}
+		}
+
+		return new OpeningBook(nrPegs, nrColors, heuristic, firstGuessRank,
+				secondGuessRanks);
+	}
+
+	/**
+	 * Reads a book from a file.
+	 *
+	 * @param file
+	 * @return The book.
+	 * @throws IOException
+	 *             If the file cannot be read or does not hold a book.
+	 */
+	public static OpeningBook load(File file) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file)));
+		try
+		{
+			if (in.readInt() != MAGIC)
+				throw new IOException("Not an opening book file");
+			if (in.readInt() != VERSION)
+				throw new IOException("Opening book of another version");
+			int nrPegs = in.readInt();
+			int nrColors = in.readInt();
+			PartitionHeuristic heuristic = PartitionHeuristic.forName(in
+					.readUTF());
+			if (heuristic == null || !KnuthGuesser.canSolve(nrPegs, nrColors))
+				throw new IOException("Corrupt opening book header");
+
+			long spaceSize = CodeSpace.forSpace(nrPegs, nrColors).size();
+			int firstGuessRank = in.readInt();
+			if (firstGuessRank < 0 || firstGuessRank >= spaceSize)
+				throw new IOException("Corrupt opening book guess");
+			int[] secondGuessRanks = new int[FeedbackSpace.forPegs(nrPegs)
+					.size()];
+			for (int i = 0; i < secondGuessRanks.length; i++)
+			{
+				secondGuessRanks[i] = in.readInt();
+				if (secondGuessRanks[i] < -1 || secondGuessRanks[i] >= spaceSize)
+					throw new IOException("Corrupt opening book guess");
+			}
+			return new OpeningBook(nrPegs, nrColors, heuristic,
+					firstGuessRank, secondGuessRanks);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes the book through an AtomicFileWriter, so an interrupted run never
+	 * leaves a partial book behind.
+	 *
+	 * @param directory
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(File directory, File file) throws IOException
+	{
+		new AtomicFileWriter()
+		{
+			protected void write(File tempFile) throws IOException
+			{
+				DataOutputStream out = new DataOutputStream(
+						new BufferedOutputStream(new FileOutputStream(tempFile)));
+				try
+				{
+					out.writeInt(MAGIC);
+					out.writeInt(VERSION);
+					out.writeInt(nrPegs);
+					out.writeInt(nrColors);
+					out.writeUTF(heuristic.getName());
+					out.writeInt(firstGuessRank);
+					for (int i = 0; i < secondGuessRanks.length; i++)
+						out.writeInt(secondGuessRanks[i]);
+				}
+				finally
+				{
+					out.close();
+				}
+			}
+		}.writeTo(directory, file);
+	}
+
+	/**
+	 *
+	 * @return The first guess of every game.
+	 */
+	public CodeSequence getFirstGuess()
+	{
+		return firstGuess;
+	}
+
+	/**
+	 *
+	 * @param feedback
+	 *            The feedback received for the first guess, interned in the
+	 *            feedback space of the game.
+	 * @return The second guess, or null if no code gives that feedback.
+	 */
+	public CodeSequence getSecondGuess(Feedback feedback)
+	{
+		return secondGuesses[feedback.getOrdinal()];
+	}
+
+	/**
+	 *
+	 * @param nrPegs
+	 * @param nrColors
+	 * @return True if this book was made for a game of this size, whatever
+	 *         the heuristic.
+	 */
+	public boolean isFor(int nrPegs, int nrColors)
+	{
+		return this.nrPegs == nrPegs && this.nrColors == nrColors;
+	}
+
+	/**
+	 *
+	 * @param nrPegs
+	 * @param nrColors
+	 * @param heuristic
+	 * @return True if this book was made for the given game and heuristic.
+	 */
+	public boolean isFor(int nrPegs, int nrColors, PartitionHeuristic heuristic)
+	{
+		return isFor(nrPegs, nrColors) && this.heuristic == heuristic;
+	}
+}
@@ -1,15 +1,17 @@
 package game;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.util.ArrayList;
-import java.util.InputMismatchException;
-import java.util.Scanner;
+import java.io.File;
+import java.io.IOException;
 
 import data.CodeSequence;
+import data.CodeSource;
 import data.ColorSpace;
 import data.Feedback;
+import data.FeedbackSpace;
+import data.PackedCode;
+import data.PackedCodeFile;
 import data.RandomGuess;
+import data.TextCodeFile;
 
 /**
  * The oracle assumes the role of the player that makes the codes for the
@@ -22,12 +24,13 @@ public class Oracle
 {
 	private final static int DEFAULT_NR_PEGS = 4;
 	private final static int DEFAULT_NR_PEG_COLORS = 6;
-	private int numCodesLeft;
+	private boolean secretCodeFromFile;
 
 	private CodeSequence secretCode;
 	private ColorSpace pegColors;
 	private int nrPegs;
-	private ArrayList<int[]> codesFromFile;
+	private String codeListFileName;
+	private CodeSource codesFromFile;
 
 	/**
 	 * Default constructor creates an oracle with 4 pegs and 6 colors.
@@ -48,72 +51,110 @@ public class Oracle
 		this.nrPegs = nrPegs;
 		pegColors = new ColorSpace(nrPegColors);
 		generateNextCode();
-		numCodesLeft = 0;
 	}
 
 	/**
-	 * Receive codes from a file.
+	 * Receive codes from a file, either a text code file or a packed code file
+	 * (see PackedCodeFile). The codes are read one game at a time rather than
+	 * all at once.
 	 * 
 	 * @param codeListFileName
 	 */
 	public Oracle(String codeListFileName)
 	{
-		// Open and read a file to generate codes
-		Scanner cmdFile = null;
-
-		// initialize codes from file container
-		codesFromFile = new ArrayList<int[]>();
+		this.codeListFileName = codeListFileName;
+		File file = new File(codeListFileName);
 		try
 		{
-			cmdFile = new Scanner(new FileInputStream(codeListFileName));
-
-			pegColors = new ColorSpace(cmdFile.nextInt());
-
-			nrPegs = cmdFile.nextInt();
-
-			cmdFile.nextLine();
-
-			// Read in third line (first line with code) as secretCode
-			// secretCode = new CodeSequence(cmdFile.nextLine().toCharArray());
-			// Read in all remaining lines and store as elements in
-			// codesFromFile ArrayList
-			while (cmdFile.hasNextLine())
-				codesFromFile.add(formatRawCode(cmdFile.nextLine()));
-
-			numCodesLeft = codesFromFile.size() + 1;
-			generateNextCode();
+			if (PackedCodeFile.isPackedCodeFile(file))
+				codesFromFile = new PackedCodeFile(file);
+			else
+				codesFromFile = new TextCodeFile(file);
 		}
-		catch (FileNotFoundException e)
+		catch (IOException e)
 		{
-			System.err.println("Cannot open file \"" + codeListFileName + "\"");
+			System.err.println("Cannot read file \"" + codeListFileName
+					+ "\": " + e.getMessage());
 			System.exit(-1);
 		}
-		catch (InputMismatchException e)
+
+		pegColors = new ColorSpace(codesFromFile.getNrColors());
+		nrPegs = codesFromFile.getNrPegs();
+		generateNextCode();
+	}
+
+	/**
+	 * Either gets the next code from file or creates a random one.
+	 */
+	public void generateNextCode()
+	{
+		CodeSequence code = nextCodeFromFile();
+		secretCodeFromFile = (code != null);
+		secretCode = (code != null) ? code : new RandomGuess(pegColors, nrPegs);
+	}
+
+	/**
+	 * Reads the next code of the file, closing the file once it runs out.
+	 * 
+	 * @return The code, or null if there is no file or no codes left in it.
+	 */
+	private CodeSequence nextCodeFromFile()
+	{
+		if (codesFromFile == null)
+			return null;
+
+		try
 		{
-			System.err.println("Expected an int, but read \"" + e.getCause());
-			System.exit(-1);
+			CodeSequence code = codesFromFile.next();
+			if (code == null)
+			{
+				codesFromFile.close();
+				codesFromFile = null;
+			}
+			return code;
 		}
-		catch (ArrayIndexOutOfBoundsException e)
+		catch (IOException e)
 		{
-			System.err.println("File did not contain any valid codes");
+			System.err.println("Cannot read file \"" + codeListFileName
+					+ "\": " + e.getMessage());
 			System.exit(-1);
-		}
-		finally
-		{
-			cmdFile.close();
+			return null;
 		}
 	}
 
 	/**
-	 * Either gets the next code from file or creates a random one.
+	 * Hands the current code from the file to another oracle and moves on to
+	 * the next one, which lets several oracles share one file.
+	 * 
+	 * @return The code, or null if there are no codes left in the file.
 	 */
-	public void generateNextCode()
+	public synchronized CodeSequence takeCodeFromFile()
 	{
-		numCodesLeft--;
-		if (codesFromFile != null && codesFromFile.size() > 0)
-			secretCode = new CodeSequence(codesFromFile.remove(0));
-		else
-			secretCode = new RandomGuess(pegColors, nrPegs);
+		if (!secretCodeFromFile)
+			return null;
+		CodeSequence code = secretCode;
+		generateNextCode();
+		return code;
+	}
+
+	/**
+	 * Starts a game with the given secret code, which lets several oracles
+	 * share one source of codes.
+	 * 
+	 * @param code
+	 */
+	public void setSecretCode(CodeSequence code)
+	{
+		secretCode = code;
+	}
+
+	/**
+	 * 
+	 * @return The code being guessed.
+	 */
+	public CodeSequence getSecretCode()
+	{
+		return secretCode;
 	}
 
 	/**
@@ -125,31 +166,96 @@ public class Oracle
 	public Feedback getFeedbackFor(CodeSequence codeSequence)
 	{
 		// System.out.println( "CODE: " + secretCode );
-		return secretCode.getFeedbackFor(codeSequence);
+		SolverEvents.Score event = new SolverEvents.Score();
+		event.begin();
+		Feedback feedback = secretCode.getFeedbackFor(codeSequence);
+		event.commitFor(nrPegs, pegColors.length(), feedback);
+		return feedback;
 	}
 
 	/**
-	 * Helper method for extracting codes from strings.
+	 * Scores many guesses against the secret code in one pass, without
+	 * creating any feedback. The color histogram of the secret code is only
+	 * computed once.
 	 * 
-	 * @param rawCode
-	 * @return
+	 * @param guesses
+	 *            The packed guesses.
+	 * @param nrGuesses
+	 *            The number of guesses to score, from the start of the array.
+	 * @param ordinals
+	 *            Filled with the ordinal of the feedback for each guess (see
+	 *            FeedbackSpace).
 	 */
-	private int[] formatRawCode(String rawCode)
+	public void getFeedbackOrdinals(long[] guesses, int nrGuesses,
+			int[] ordinals)
 	{
-		Scanner raw = new Scanner(rawCode);
-		int[] formattedCode = new int[nrPegs];
-		for (int i = 0; i < nrPegs && raw.hasNextInt(); i++)
-			formattedCode[i] = raw.nextInt();
-		return formattedCode;
+		if (!secretCode.isPacked())
+			throw new IllegalStateException("Cannot score packed guesses against "
+					+ nrPegs + " pegs with " + pegColors.length() + " colors");
+
+		FeedbackSpace feedbackSpace = FeedbackSpace.forPegs(nrPegs);
+		long secret = secretCode.getPacked();
+		if (nrPegs > PackedCode.MAX_HISTOGRAM_PEGS)
+		{
+			for (int i = 0; i < nrGuesses; i++)
+				ordinals[i] = feedbackSpace.ordinalOfCode(PackedCode.score(
+						secret, guesses[i], nrPegs));
+			return;
+		}
+
+		long secretHistogram = secretCode.getColorHistogram();
+		for (int i = 0; i < nrGuesses; i++)
+			ordinals[i] = feedbackSpace.ordinalOfCode(PackedCode.score(secret,
+					guesses[i], nrPegs, secretHistogram,
+					PackedCode.colorHistogram(guesses[i], nrPegs)));
+	}
+
+	/**
+	 * Scores one guess against many hypothetical secret codes in one pass,
+	 * giving the feedback the oracle would give if each were its secret. The
+	 * color histogram of the guess is only computed once.
+	 * 
+	 * @param guess
+	 *            The packed guess.
+	 * @param secrets
+	 *            The packed secret codes.
+	 * @param nrSecrets
+	 *            The number of secret codes to score against, from the start
+	 *            of the array.
+	 * @param ordinals
+	 *            Filled with the ordinal of the feedback for each secret code.
+	 */
+	public void getFeedbackOrdinals(long guess, long[] secrets, int nrSecrets,
+			int[] ordinals)
+	{
+		if (!PackedCode.isPackable(nrPegs, pegColors.length()))
+			throw new IllegalStateException("Cannot score packed codes of "
+					+ nrPegs + " pegs with " + pegColors.length() + " colors");
+
+		FeedbackSpace feedbackSpace = FeedbackSpace.forPegs(nrPegs);
+		if (nrPegs > PackedCode.MAX_HISTOGRAM_PEGS)
+		{
+			for (int i = 0; i < nrSecrets; i++)
+				ordinals[i] = feedbackSpace.ordinalOfCode(PackedCode.score(
+						secrets[i], guess, nrPegs));
+			return;
+		}
+
+		long guessHistogram = PackedCode.colorHistogram(guess, nrPegs);
+		for (int i = 0; i < nrSecrets; i++)
+			ordinals[i] = feedbackSpace.ordinalOfCode(PackedCode.score(
+					secrets[i], guess, nrPegs,
+					PackedCode.colorHistogram(secrets[i], nrPegs),
+					guessHistogram));
 	}
 
 	/**
 	 * 
-	 * @return True if there are still codes left from the file.
+	 * @return True if the code being guessed came from the file.
 	 */
 	public boolean hasCodeToUseFromFile()
 	{
-		return numCodesLeft > 0;
+		return secretCodeFromFile;
 	}
 
 	/**
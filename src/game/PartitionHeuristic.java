@@ -0,0 +1,117 @@
+package game;
+
+/**
+ * The ways a guess can be rated from the partition it makes of the remaining
+ * codes, where each partition holds the codes giving the same feedback. A
+ * higher score is always better.
+ * 
+ * @author M. Curtis, M. Edoror and B. Farrington
+ * 
+ */
+public enum PartitionHeuristic
+{
+	/**
+	 * Knuth's rule: minimize the size of the largest partition.
+	 */
+	WORST_CASE("worst")
+	{
+		public double score(int[] partitionSizes, int nrCodes)
+		{
+			int largest = 0;
+			for (int i = 0; i < partitionSizes.length; i++)
+				if (partitionSizes[i] > largest)
+					largest = partitionSizes[i];
+			return -largest;
+		}
+	},
+
+	/**
+	 * Irving's rule: minimize the expected size of the partition the secret
+	 * falls in.
+	 */
+	EXPECTED_SIZE("expected")
+	{
+		public double score(int[] partitionSizes, int nrCodes)
+		{
+			long sumOfSquares = 0;
+			for (int i = 0; i < partitionSizes.length; i++)
+				sumOfSquares += (long) partitionSizes[i] * partitionSizes[i];
+			return -(double) sumOfSquares / nrCodes;
+		}
+	},
+
+	/**
+	 * Neuwirth's rule: maximize the entropy of the partition.
+	 */
+	ENTROPY("entropy")
+	{
+		public double score(int[] partitionSizes, int nrCodes)
+		{
+			double entropy = 0.0;
+			for (int i = 0; i < partitionSizes.length; i++)
+				if (partitionSizes[i] > 0)
+				{
+					double p = (double) partitionSizes[i] / nrCodes;
+					entropy -= p * Math.log(p);
+				}
+			return entropy;
+		}
+	},
+
+	/**
+	 * Kooi's rule: maximize the number of partitions.
+	 */
+	MOST_PARTS("parts")
+	{
+		public double score(int[] partitionSizes, int nrCodes)
+		{
+			int parts = 0;
+			for (int i = 0; i < partitionSizes.length; i++)
+				if (partitionSizes[i] > 0)
+					parts++;
+			return parts;
+		}
+	};
+
+	private final String name;
+
+	private PartitionHeuristic(String name)
+	{
+		this.name = name;
+	}
+
+	/**
+	 * Rates a guess.
+	 * 
+	 * @param partitionSizes
+	 *            The number of codes giving each feedback, indexed by feedback
+	 *            ordinal.
+	 * @param nrCodes
+	 *            The total number of codes partitioned.
+	 * @return The score of the guess, higher being better.
+	 */
+	public abstract double score(int[] partitionSizes, int nrCodes);
+
+	/**
+	 * 
+	 * @return The short name used on the command line.
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * 
+	 * @param name
+	 *            A short name as used on the command line.
+	 * @return The matching heuristic, or null if there is none.
+	 */
+	public static PartitionHeuristic forName(String name)
+	{
+		for (PartitionHeuristic heuristic : values())
+			if (heuristic.name.equalsIgnoreCase(name))
+				return heuristic;
+		return null;
+	}
+}
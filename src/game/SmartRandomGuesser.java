@@ -1,18 +1,29 @@
 package game;
 
 import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
 
 
 import data.CodeSequence;
 import data.ColorSpace;
 import data.Feedback;
+import data.FeedbackSpace;
+import data.OffHeapCandidateStore;
+import data.PackedCode;
+import data.RandomSource;
 import data.RandomGuess;
+import data.SharedPools;
 
 /**
  * The smart random guesser generates guesses by random selecting a guess and
  * checking it against past feedbacks to see if it is worth asking the oracle
  * for new feedback.
  * 
+ * When the code space is small enough to be walked once, the codes consistent
+ * with every feedback are kept in an OffHeapCandidateStore from the first
+ * feedback on, and guesses are picked at random from it instead. An
+ * OpeningBook can supply the first two guesses.
+ * 
  * @author M. Curtis, M. Edoror and B. Farrington
  * 
  */
@@ -22,8 +33,14 @@ public class SmartRandomGuesser implements Guesser
 	
         private ColorSpace pegColors;
         private int nrPegs;
+        private FeedbackSpace feedbackSpace;
         private ArrayList<CodeSequence> guesses;
         private ArrayList<Feedback> feedbackForGuesses;
+        private boolean canStoreCandidates;
+        private OffHeapCandidateStore candidates;
+        private final ForkJoinPool pool;
+        private OpeningBook openingBook;
+        private final GuesserMetrics metrics = new GuesserMetrics();
         private int bestGuessIndex;
         private ColorSpace workingColorSpace;
         private String theBias;
@@ -35,25 +52,79 @@ public class SmartRandomGuesser implements Guesser
         }
         
         public SmartRandomGuesser(int nrPegs, int nrPegColors, String bias){
+            this(nrPegs, nrPegColors, bias, 1);
+        }
+        
+        /**
+         * Constructor with a number of threads to filter the consistent codes on.
+         * 
+         * @param nrPegs
+         * @param nrPegColors
+         * @param bias
+         * @param nrThreads
+         */
+        public SmartRandomGuesser(int nrPegs, int nrPegColors, String bias, int nrThreads){
             this.nrPegs = nrPegs;
+            pool = SharedPools.forThreads( nrThreads );
             pegColors = new ColorSpace(nrPegColors);
+            feedbackSpace = FeedbackSpace.forPegs(nrPegs);
             
             reset();
+            canStoreCandidates = OffHeapCandidateStore.canEnumerate( nrPegs, nrPegColors );
             
             theBias = bias;
         }
+        /**
+         * Keeps the consistent codes only in code spaces of at most the given size,
+         * guessing by sampling in larger ones, which bounds the memory the guesser
+         * holds.
+         * 
+         * @param maxSpaceSize
+         */
+        public void limitCandidateStore( long maxSpaceSize )
+        {
+                canStoreCandidates = OffHeapCandidateStore.canEnumerate( nrPegs, pegColors.length() )
+                                && PackedCode.spaceSize( nrPegs, pegColors.length() ) <= maxSpaceSize;
+        }
+        
+        /**
+         * Makes the guesser open with the guesses of a book.
+         * 
+         * @param book A book made for the same game, or null to guess randomly.
+         */
+        public void setOpeningBook( OpeningBook book )
+        {
+                if( book != null && !book.isFor( nrPegs, pegColors.length() ) )
+                        throw new IllegalArgumentException( "The opening book was made for another game" );
+                openingBook = book;
+        }
+        
         public void reset()
         {
                 guesses = new ArrayList<CodeSequence>();
                 feedbackForGuesses = new ArrayList<Feedback>();
                 bestGuessIndex = -1;
                 workingColorSpace = new ColorSpace(pegColors);
+                candidates = null;
         }
  
         public CodeSequence guess()
+        {
+                SolverEvents.Guess event = new SolverEvents.Guess();
+                event.begin();
+                long generatedBefore = metrics.getCandidatesPerGuess().getSum();
+                CodeSequence guess = chooseGuess();
+                event.commitFor( this, nrPegs, pegColors.length(), guesses.size(), ( candidates == null ) ? -1 : candidates.size(),
+                                 metrics.getCandidatesPerGuess().getSum() - generatedBefore );
+                return guess;
+        }
+        
+        private CodeSequence chooseGuess()
     	{
     		if( guesses.size() != feedbackForGuesses.size() )
     			throw new RuntimeException("Can't guess again until feedback is received for last guess");
+    		if( workingColorSpace.length() == 0 || ( candidates != null && candidates.size() == 0 ) )
+    			throw new IllegalStateException( "No code gives the feedback received so far" );
     		
     		CodeSequence guess = null;
     		int nrOfGuessMatches = 0;
@@ -63,8 +134,16 @@ public class SmartRandomGuesser implements Guesser
     		int nrGuessesGenerated = 0;
     		//int[] cheatArray = new int[this.nrPegs];
     		
+    		CodeSequence bookGuess = guessFromOpeningBook();
+    		if( bookGuess != null )
+    			return bookGuess;
+    		
+    		if( candidates != null && candidates.size() > 0 )
+    			return guessFromCandidates();
+    		
    			while(!guessMatchesAll) 
    			{ 
+   				long startNanos = System.nanoTime();
    				/*
    				if(guesses.isEmpty() && theBias.equals("b1")){
    					int halfWay = this.nrPegs / 2;
@@ -106,18 +185,10 @@ public class SmartRandomGuesser implements Guesser
    				else
     				guess = new RandomGuess( workingColorSpace, guesses.get(bestGuessIndex), feedbackForGuesses.get(bestGuessIndex) );
     		
-   				nrOfGuessMatches = 0;
-   				
-   				for(int i = 0; i < guesses.size(); i++ )
-   				{
-   					if( guess.equals( guesses.get(i) ) )
-   					{
-   						nrOfGuessMatches = 0;
-   						break;
-   					}
-   					if( guess.getFeedbackFor( guesses.get(i) ).equals( feedbackForGuesses.get(i) ) )
-   						nrOfGuessMatches++;
-   				}
+   				long generatedNanos = System.nanoTime();
+   				nrOfGuessMatches = countGuessMatches( guess );
+   				metrics.addGeneratingNanos( generatedNanos - startNanos );
+   				metrics.addValidatingNanos( System.nanoTime() - generatedNanos );
    				
    				nrGuessesGenerated++;
    				
@@ -132,21 +203,121 @@ public class SmartRandomGuesser implements Guesser
    				
    			}
  
-   			System.out.println( nrGuessesGenerated + " guesses generated-- best guess matches " + 
-   								((guesses.size() == nrOfGuessMatches) ? "all " + guesses.size() + " previous" : 
-   										nrOfGuessMatches + " of " + guesses.size()) + " guesses..." );
+   			metrics.recordGuess( nrGuessesGenerated, nrOfBestNextGuessMatches == guesses.size() );
     		guesses.add(bestNextGuess);
     		return bestNextGuess;
     	}
         
+        /**
+         * Looks the first two guesses up in the opening book.
+         * 
+         * @return The guess, or null if the book has none for this turn.
+         */
+        private CodeSequence guessFromOpeningBook()
+        {
+                if( openingBook == null || guesses.size() >= 2 )
+                        return null;
+                
+                CodeSequence guess = guesses.isEmpty() ? openingBook.getFirstGuess() : openingBook.getSecondGuess( feedbackForGuesses.get(0) );
+                if( guess == null || guesses.contains( guess ) )
+                        return null;
+                
+                metrics.recordLookedUpGuess();
+                guesses.add(guess);
+                return guess;
+        }
+        
+        /**
+         * Picks one of the codes consistent with every feedback at random, which
+         * matches all previous guesses by construction.
+         * 
+         * @return The guess.
+         */
+        private CodeSequence guessFromCandidates()
+        {
+                CodeSequence guess = candidates.sequenceAt( RandomSource.current().nextLong( candidates.size() ) );
+                metrics.recordCandidateSetSize( candidates.size() );
+                metrics.recordGuess( 1, true );
+                guesses.add(guess);
+                return guess;
+        }
+        
+        /**
+         * Keeps only the consistent codes that give the feedback for the last guess,
+         * building the store on the first feedback. If the store does not fit in
+         * direct memory, the guesser goes back to sampling for the rest of its life.
+         * 
+         * @param lastGuess
+         * @param feedback
+         */
+        private void filterCandidates( CodeSequence lastGuess, Feedback feedback )
+        {
+                if( !canStoreCandidates || !lastGuess.isPacked() )
+                        return;
+                
+                SolverEvents.Filter event = new SolverEvents.Filter();
+                event.begin();
+                long nrCandidatesBefore = ( candidates == null ) ? PackedCode.spaceSize( nrPegs, pegColors.length() ) : candidates.size();
+                long startNanos = System.nanoTime();
+                try
+                {
+                        if( candidates == null )
+                        {
+                                if( guesses.size() == 1 )
+                                {
+                                        candidates = OffHeapCandidateStore.enumerate( nrPegs, pegColors.length(), lastGuess.getPacked(), feedback.getOrdinal(), pool );
+                                        metrics.addConsistencyChecks( nrCandidatesBefore );
+                                }
+                        }
+                        else
+                        {
+                                metrics.addConsistencyChecks( candidates.size() );
+                                candidates.retainFeedback( lastGuess.getPacked(), feedback.getOrdinal() );
+                        }
+                }
+                catch( OutOfMemoryError e )
+                {
+                        System.err.println( "Not enough direct memory to hold the consistent codes, guessing randomly..." );
+                        candidates = null;
+                        canStoreCandidates = false;
+                }
+                metrics.addValidatingNanos( System.nanoTime() - startNanos );
+                if( candidates != null )
+                        event.commitFor( nrPegs, pegColors.length(), nrCandidatesBefore, candidates.size() );
+        }
+        
+        /**
+         * Counts the previous guesses that would have received the feedback they did if
+         * the given guess were the secret code. There are too few previous guesses to fill
+         * a vector, so they are scored one at a time.
+         * 
+         * @param guess
+         * @return The number of consistent previous guesses, or 0 if the guess was already made.
+         */
+        private int countGuessMatches( CodeSequence guess )
+        {
+                int nrOfGuessMatches = 0;
+                
+                for(int i = 0; i < guesses.size(); i++ )
+                {
+                        metrics.addConsistencyChecks( 1 );
+                        if( guess.equals( guesses.get(i) ) )
+                                return 0;
+                        if( guess.getFeedbackOrdinalFor( guesses.get(i) ) == feedbackForGuesses.get(i).getOrdinal() )
+                                nrOfGuessMatches++;
+                }
+                return nrOfGuessMatches;
+        }
+        
         public void giveFeedbackForLastGuess(Feedback feedback)
         {
                 if(feedbackForGuesses.size() != guesses.size() - 1)
                         throw new RuntimeException("Already gave feedback for last guess");
                 
-                feedbackForGuesses.add(feedback);
+                feedbackForGuesses.add(feedbackSpace.intern(feedback));
                 
                 CodeSequence lastGuess = guesses.get(guesses.size() - 1);
+                filterCandidates( lastGuess, feedbackForGuesses.get(feedbackForGuesses.size() - 1) );
                             
                 /*
                 if( guesses.size() == 1 && theBias.equals("b1"))
@@ -173,6 +344,11 @@ public class SmartRandomGuesser implements Guesser
                         bestGuessIndex = feedbackForGuesses.size() - 1;
         }
         
+        public GuesserMetrics getMetrics()
+        {
+                return metrics;
+        }
+        
         public String toString()
         {
                 String returnString = "";
@@ -0,0 +1,162 @@
+package game;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import data.Feedback;
+
+/**
+ * The Java Flight Recorder events the solver emits around its phases, so a
+ * recording of a run shows which guess, score, filtering pass or study was
+ * under way when the GC or allocation profile spiked. An event is only
+ * filled in and committed when a recording has it enabled; otherwise it costs
+ * a check of a flag. Record a run with, for example:
+ *
+ * java -XX:StartFlightRecording=filename=run.jfr testing.Tester -k
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ *
+ */
+final class SolverEvents
+{
+	private static final String CATEGORY = "Mastermind";
+
+	private SolverEvents()
+	{
+	}
+
+	@Name("mastermind.Guess")
+	@Label("Guess")
+	@Category(CATEGORY)
+	@Description("A guesser working out its next guess")
+	static class Guess extends Event
+	{
+		@Label("Guesser")
+		String guesser;
+
+		@Label("Pegs")
+		int pegs;
+
+		@Label("Colors")
+		int colors;
+
+		@Label("Turn")
+		int turn;
+
+		@Label("Consistent Codes")
+		@Description("Codes consistent with every feedback, or -1 if the guesser does not keep them")
+		long candidates;
+
+		@Label("Codes Generated")
+		@Description("Codes considered before settling on the guess")
+		long generated;
+
+		void commitFor(Guesser guesser, int pegs, int colors, int turn,
+				long candidates, long generated)
+		{
+			if (!shouldCommit())
+				return;
+			this.guesser = guesser.getClass().getSimpleName();
+			this.pegs = pegs;
+			this.colors = colors;
+			this.turn = turn;
+			this.candidates = candidates;
+			this.generated = generated;
+			commit();
+		}
+	}
+
+	@Name("mastermind.Score")
+	@Label("Score")
+	@Category(CATEGORY)
+	@Description("The oracle scoring a guess against the secret code")
+	static class Score extends Event
+	{
+		@Label("Pegs")
+		int pegs;
+
+		@Label("Colors")
+		int colors;
+
+		@Label("Blacks")
+		int blacks;
+
+		@Label("Whites")
+		int whites;
+
+		void commitFor(int pegs, int colors, Feedback feedback)
+		{
+			if (!shouldCommit())
+				return;
+			this.pegs = pegs;
+			this.colors = colors;
+			this.blacks = feedback.getBlack();
+			this.whites = feedback.getWhite();
+			commit();
+		}
+	}
+
+	@Name("mastermind.Filter")
+	@Label("Candidate Filtering")
+	@Category(CATEGORY)
+	@Description("Dropping the codes that do not give the feedback of the last guess")
+	static class Filter extends Event
+	{
+		@Label("Pegs")
+		int pegs;
+
+		@Label("Colors")
+		int colors;
+
+		@Label("Codes Before")
+		long before;
+
+		@Label("Codes After")
+		long after;
+
+		void commitFor(int pegs, int colors, long before, long after)
+		{
+			if (!shouldCommit())
+				return;
+			this.pegs = pegs;
+			this.colors = colors;
+			this.before = before;
+			this.after = after;
+			commit();
+		}
+	}
+
+	@Name("mastermind.Study")
+	@Label("Study")
+	@Category(CATEGORY)
+	@Description("The learner updating its pattern statistics between games")
+	static class Study extends Event
+	{
+		@Label("Pegs")
+		int pegs;
+
+		@Label("Colors")
+		int colors;
+
+		@Label("Games Played")
+		int gamesPlayed;
+
+		@Label("Patterns")
+		@Description("Patterns matched against the last code")
+		int patterns;
+
+		void commitFor(int pegs, int colors, int gamesPlayed, int patterns)
+		{
+			if (!shouldCommit())
+				return;
+			this.pegs = pegs;
+			this.colors = colors;
+			this.gamesPlayed = gamesPlayed;
+			this.patterns = patterns;
+			commit();
+		}
+	}
+}
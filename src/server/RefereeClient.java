@@ -0,0 +1,436 @@
+package server;
+
+import game.Guesser;
+import game.KnuthGuesser;
+import game.PartitionHeuristic;
+import game.SmartRandomGuesser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import data.CodeSequence;
+import data.Feedback;
+import data.FeedbackSpace;
+import testing.GameStatistics;
+
+/**
+ * A client of the RefereeServer, holding one session. Run on its own, it is a
+ * stand-in for the real clients: it plays games on many concurrent sessions
+ * with a guesser per session and reports the games per second the referee
+ * sustains. Without a port it starts a referee of its own.
+ *
+ *  Usage:
+ *  -host <String>	(Connects to the specified host, defaults to the loopback address)
+ *  -port <int>	(Connects to a referee on the specified port instead of starting one)
+ *  -n <int> 	(Sets the number of concurrent sessions, defaults to 100)
+ *  -g <int> 	(Sets the number of games each session plays, defaults to 100)
+ *  -p <int> 	(Sets the number of pegs, defaults to 4)
+ *  -c <int> 	(Sets the number of colors, defaults to 6)
+ *  -k	     	(Guesses with the Knuth Guesser instead of the Smart Random Guesser)
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ */
+public class RefereeClient
+{
+	private final Socket socket;
+	private final BufferedReader in;
+	private final Writer out;
+	private int nrPegs;
+	private int nrColors;
+	private FeedbackSpace feedbackSpace;
+
+	/**
+	 * Opens a session.
+	 *
+	 * @param host
+	 * @param port
+	 * @throws IOException
+	 */
+	public RefereeClient(String host, int port) throws IOException
+	{
+		socket = new Socket(host, port);
+		socket.setTcpNoDelay(true);
+		in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+				StandardCharsets.US_ASCII));
+		out = new BufferedWriter(new OutputStreamWriter(
+				socket.getOutputStream(), StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * Asks for a new game with a random secret code, without waiting for the
+	 * answer, so the first guess can follow in the same write.
+	 *
+	 * @param nrPegs
+	 * @param nrColors
+	 * @throws IOException
+	 */
+	public void sendNewGame(int nrPegs, int nrColors) throws IOException
+	{
+		this.nrPegs = nrPegs;
+		this.nrColors = nrColors;
+		feedbackSpace = FeedbackSpace.forPegs(nrPegs);
+		out.write("NEW " + nrPegs + " " + nrColors + "\n");
+	}
+
+	/**
+	 * Waits for the referee to confirm a new game.
+	 *
+	 * @throws IOException
+	 *             If the referee refused it.
+	 */
+	public void awaitReady() throws IOException
+	{
+		String answer = readAnswer();
+		if (!answer.startsWith("READY"))
+			throw new IOException("The referee answered " + answer);
+	}
+
+	/**
+	 * Starts a new game with a random secret code.
+	 *
+	 * @param nrPegs
+	 * @param nrColors
+	 * @throws IOException
+	 */
+	public void newGame(int nrPegs, int nrColors) throws IOException
+	{
+		sendNewGame(nrPegs, nrColors);
+		out.flush();
+		awaitReady();
+	}
+
+	/**
+	 * Sends a guess without waiting for its feedback.
+	 *
+	 * @param guess
+	 * @throws IOException
+	 */
+	public void sendGuess(CodeSequence guess) throws IOException
+	{
+		out.write("GUESS " + guess + "\n");
+	}
+
+	/**
+	 * Waits for the feedback of the oldest guess sent.
+	 *
+	 * @return The feedback.
+	 * @throws IOException
+	 *             If the referee did not score the guess.
+	 */
+	public Feedback awaitFeedback() throws IOException
+	{
+		String[] words = RefereeServer.words(readAnswer());
+		if (words.length != 3 || !words[0].equals("FEEDBACK"))
+			throw new IOException("The referee answered "
+					+ String.join(" ", words));
+		return feedbackSpace.get(feedbackSpace.ordinalOf(
+				Integer.parseInt(words[1]), Integer.parseInt(words[2])));
+	}
+
+	/**
+	 * Scores a guess.
+	 *
+	 * @param guess
+	 * @return The feedback.
+	 * @throws IOException
+	 */
+	public Feedback guess(CodeSequence guess) throws IOException
+	{
+		sendGuess(guess);
+		out.flush();
+		return awaitFeedback();
+	}
+
+	/**
+	 * Sends the requests still buffered.
+	 *
+	 * @throws IOException
+	 */
+	public void flush() throws IOException
+	{
+		out.flush();
+	}
+
+	/**
+	 * Reads the next answer, sending any requests still buffered first.
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	private String readAnswer() throws IOException
+	{
+		out.flush();
+		String answer = in.readLine();
+		if (answer == null)
+			throw new IOException("The referee closed the session");
+		return answer;
+	}
+
+	/**
+	 * Ends the session.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException
+	{
+		try
+		{
+			out.write("QUIT\n");
+			readAnswer();
+		}
+		finally
+		{
+			socket.close();
+		}
+	}
+
+	/**
+	 *
+	 * @return The number of pegs of the current game.
+	 */
+	public int getNrPegs()
+	{
+		return nrPegs;
+	}
+
+	/**
+	 *
+	 * @return The number of colors of the current game.
+	 */
+	public int getNrColors()
+	{
+		return nrColors;
+	}
+
+	/**
+	 * Plays games on many concurrent sessions and reports the throughput.
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args)
+	{
+		String host = null;
+		int port = 0;
+		int nrSessions = 100;
+		int nrGamesPerSession = 100;
+		int pegs = 4;
+		int colors = 6;
+		boolean knuth = false;
+		for (int i = 0; i < args.length; i++)
+			if (args[i].equals("-host"))
+				host = args[++i];
+			else if (args[i].equals("-port"))
+				port = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-n"))
+				nrSessions = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-g"))
+				nrGamesPerSession = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-p"))
+				pegs = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-c"))
+				colors = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-k"))
+				knuth = true;
+			else
+				System.out.println("Unknown command line argument - \""
+						+ args[i] + "\"");
+
+		if (knuth && !KnuthGuesser.canSolve(pegs, colors))
+		{
+			System.out.println("Too many codes for the Knuth Guesser with "
+					+ pegs + " PEGS and " + colors
+					+ " COLORS, guessing randomly...");
+			knuth = false;
+		}
+
+		RefereeServer server = null;
+		try
+		{
+			if (port == 0)
+			{
+				server = new RefereeServer(0);
+				server.start();
+				port = server.getPort();
+			}
+			if (host == null)
+				host = InetAddress.getLoopbackAddress().getHostAddress();
+
+			long start = System.currentTimeMillis();
+			GameStatistics statistics = play(host, port, nrSessions,
+					nrGamesPerSession, pegs, colors, knuth);
+			double elapsedTime = (System.currentTimeMillis() - start) / 1000.0;
+
+			System.out.println("Played " + statistics.getNrGamesPlayed()
+					+ " games with " + pegs + " PEGS and " + colors
+					+ " COLORS on " + nrSessions + " sessions in "
+					+ elapsedTime + " seconds...");
+			System.out.println("\t          GAMES PER SECOND: "
+					+ Math.round(statistics.getNrGamesPlayed() / elapsedTime));
+			statistics.print(System.out);
+
+			if (server != null)
+				server.close();
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not reach the referee: " + e.getMessage());
+			System.exit(-1);
+		}
+	}
+
+	/**
+	 * Plays games on concurrent sessions, each with its own guesser. The
+	 * sessions are shared out over one worker per processor, and a worker
+	 * keeps a request of every one of its sessions in flight, so thousands of
+	 * sessions need no thread of their own.
+	 *
+	 * @return The merged statistics of all sessions.
+	 * @throws IOException
+	 */
+	private static GameStatistics play(final String host, final int port,
+			final int nrSessions, final int nrGames, final int pegs,
+			final int colors, final boolean knuth) throws IOException
+	{
+		final int nrWorkers = Math.min(nrSessions, Runtime.getRuntime()
+				.availableProcessors());
+		ExecutorService workers = Executors.newFixedThreadPool(nrWorkers);
+		ArrayList<Future<GameStatistics>> results = new ArrayList<Future<GameStatistics>>();
+		for (int i = 0; i < nrWorkers; i++)
+		{
+			final int workerNr = i;
+			results.add(workers.submit(new Callable<GameStatistics>()
+			{
+				public GameStatistics call() throws IOException
+				{
+					GameStatistics statistics = new GameStatistics();
+					LinkedList<Player> players = new LinkedList<Player>();
+					for (int sessionNr = workerNr; sessionNr < nrSessions; sessionNr += nrWorkers)
+						players.add(new Player(new RefereeClient(host, port),
+								pegs, colors, knuth, nrGames, statistics));
+					for (Player player : players)
+						player.startGame();
+
+					while (!players.isEmpty())
+					{
+						Iterator<Player> remaining = players.iterator();
+						while (remaining.hasNext())
+							if (!remaining.next().play())
+								remaining.remove();
+					}
+					return statistics;
+				}
+			}));
+		}
+		workers.shutdown();
+
+		GameStatistics statistics = new GameStatistics();
+		try
+		{
+			for (Future<GameStatistics> result : results)
+				statistics.merge(result.get());
+		}
+		catch (InterruptedException e)
+		{
+			throw new IOException("Interrupted while waiting for the sessions");
+		}
+		catch (ExecutionException e)
+		{
+			throw new IOException("A session failed: " + e.getCause());
+		}
+		return statistics;
+	}
+
+	/**
+	 * One session playing its games with a guesser of its own, a request at a
+	 * time.
+	 */
+	private static class Player
+	{
+		private final RefereeClient client;
+		private final Guesser guesser;
+		private final int nrPegs;
+		private final int nrColors;
+		private final int nrGames;
+		private final GameStatistics statistics;
+		private int nrGamesPlayed;
+		private int nrGuesses;
+		private boolean awaitingReady;
+
+		Player(RefereeClient client, int nrPegs, int nrColors, boolean knuth,
+				int nrGames, GameStatistics statistics)
+		{
+			this.client = client;
+			this.nrPegs = nrPegs;
+			this.nrColors = nrColors;
+			this.nrGames = nrGames;
+			this.statistics = statistics;
+			guesser = knuth ? new KnuthGuesser(nrPegs, nrColors,
+					PartitionHeuristic.WORST_CASE, 1) : new SmartRandomGuesser(
+					nrPegs, nrColors);
+		}
+
+		/**
+		 * Sends a new game together with its first guess.
+		 *
+		 * @throws IOException
+		 */
+		void startGame() throws IOException
+		{
+			client.sendNewGame(nrPegs, nrColors);
+			client.sendGuess(guesser.guess());
+			client.flush();
+			awaitingReady = true;
+			nrGuesses = 0;
+		}
+
+		/**
+		 * Takes the answer to the request in flight and sends the next one.
+		 *
+		 * @return False once every game has been played and the session is
+		 *         closed.
+		 * @throws IOException
+		 */
+		boolean play() throws IOException
+		{
+			if (awaitingReady)
+			{
+				client.awaitReady();
+				awaitingReady = false;
+			}
+			Feedback feedback = client.awaitFeedback();
+			guesser.giveFeedbackForLastGuess(feedback);
+			nrGuesses++;
+			if (feedback.getBlack() < nrPegs)
+			{
+				client.sendGuess(guesser.guess());
+				client.flush();
+				return true;
+			}
+
+			statistics.record(nrGuesses);
+			guesser.reset();
+			if (++nrGamesPlayed < nrGames)
+			{
+				startGame();
+				return true;
+			}
+			client.close();
+			return false;
+		}
+	}
+}
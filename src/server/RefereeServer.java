@@ -0,0 +1,683 @@
+package server;
+
+import game.Oracle;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import data.CodeSequence;
+import data.Feedback;
+
+/**
+ * The referee server plays the Oracle for many clients at once over a line
+ * protocol on a local TCP port. Every connection is a session with its own
+ * Oracle. Where the JVM has virtual threads, every session is served by a
+ * virtual thread of its own. Otherwise the sessions are multiplexed over
+ * non-blocking channels by one Selector per processor, which parse the
+ * requests out of a buffer per session, so thousands of sessions take only a
+ * handful of threads. A session plays one game after another:
+ *
+ *  NEW <pegs> <colors>		(Starts a game with a random secret code, answered by READY <pegs> <colors>)
+ *  SECRET <color> ...		(Starts a game of the current size with the given secret code, answered by READY)
+ *  GUESS <color> ...		(Scores a guess, answered by FEEDBACK <blacks> <whites>; the game is over once all pegs are black)
+ *  QUIT					(Ends the session, answered by BYE)
+ *
+ * Anything else is answered by ERROR <reason>. Requests may be pipelined:
+ * a client can send several lines without waiting, and the answers come back
+ * in order. Answers are only flushed once no more requests are waiting, so a
+ * pipelined burst costs one write.
+ *
+ * Usage: RefereeServer [-port <int>]	(Listens on the loopback address, on a free port by default)
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ */
+public class RefereeServer
+{
+	public static final int MAX_PEGS = 64;
+	public static final int MAX_COLORS = 64;
+	public static final int MAX_PLATFORM_THREADS = 512;
+	public static final int MAX_REQUEST_LENGTH = 1024;
+
+	private final ServerSocket serverSocket;
+	private final ServerSocketChannel serverChannel;
+	private final ExecutorService sessions;
+	private final SelectorLoop[] selectorLoops;
+	private final AtomicLong nrGamesSolved = new AtomicLong();
+	private final AtomicLong nrGuessesScored = new AtomicLong();
+	private Thread acceptor;
+
+	/**
+	 * Binds the server to a port of the loopback address.
+	 *
+	 * @param port
+	 *            The port, or 0 for any free port.
+	 * @throws IOException
+	 */
+	public RefereeServer(int port) throws IOException
+	{
+		InetSocketAddress address = new InetSocketAddress(
+				InetAddress.getLoopbackAddress(), port);
+		sessions = newVirtualThreadPerTaskExecutor();
+		if (sessions != null)
+		{
+			serverChannel = null;
+			selectorLoops = null;
+			serverSocket = new ServerSocket();
+			serverSocket.bind(address);
+		}
+		else
+		{
+			serverChannel = ServerSocketChannel.open();
+			serverChannel.bind(address);
+			serverSocket = serverChannel.socket();
+			selectorLoops = new SelectorLoop[Runtime.getRuntime()
+					.availableProcessors()];
+			for (int i = 0; i < selectorLoops.length; i++)
+				selectorLoops[i] = new SelectorLoop();
+		}
+	}
+
+	/**
+	 * Creates an executor that runs every task on a new virtual thread. It is
+	 * looked up reflectively so the code still builds and runs on JDKs
+	 * without virtual threads.
+	 *
+	 * @return The executor, or null if the JVM has no virtual threads.
+	 */
+	static ExecutorService newVirtualThreadPerTaskExecutor()
+	{
+		try
+		{
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Creates an executor that runs every task on a new virtual thread when
+	 * the JVM supports them, and on a pool of at most MAX_PLATFORM_THREADS
+	 * platform threads otherwise. The pool does not queue: once every thread
+	 * is busy, execute throws a RejectedExecutionException.
+	 *
+	 * @return The executor.
+	 */
+	static ExecutorService newPerTaskExecutor()
+	{
+		ExecutorService executor = newVirtualThreadPerTaskExecutor();
+		if (executor != null)
+			return executor;
+		return new ThreadPoolExecutor(0, MAX_PLATFORM_THREADS, 60L,
+				TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+	}
+
+	/**
+	 * Hands a connection to an executor, turning it away with an ERROR when
+	 * the executor has no thread left for it.
+	 *
+	 * @param executor
+	 * @param socket
+	 * @param connection
+	 *            The task serving the connection.
+	 */
+	static void serve(ExecutorService executor, Socket socket,
+			Runnable connection)
+	{
+		try
+		{
+			executor.execute(connection);
+		}
+		catch (RejectedExecutionException e)
+		{
+			try
+			{
+				socket.getOutputStream().write(
+						"ERROR Too many connections\n".getBytes(StandardCharsets.US_ASCII));
+				socket.close();
+			}
+			catch (IOException closeFailure)
+			{
+			}
+		}
+	}
+
+	/**
+	 * Starts accepting connections on a background thread.
+	 */
+	public void start()
+	{
+		if (selectorLoops != null)
+			for (int i = 0; i < selectorLoops.length; i++)
+				new Thread(selectorLoops[i], "referee-selector-" + i).start();
+
+		acceptor = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				int nrAccepted = 0;
+				while (!serverSocket.isClosed())
+				{
+					try
+					{
+						if (serverChannel == null)
+						{
+							Socket socket = serverSocket.accept();
+							socket.setTcpNoDelay(true);
+							serve(sessions, socket, new Connection(socket));
+						}
+						else
+						{
+							SocketChannel channel = serverChannel.accept();
+							channel.socket().setTcpNoDelay(true);
+							channel.configureBlocking(false);
+							selectorLoops[nrAccepted++ % selectorLoops.length].add(channel);
+						}
+					}
+					catch (IOException e)
+					{
+						if (!serverSocket.isClosed())
+							System.err.println("Could not accept a connection: "
+									+ e.getMessage());
+					}
+				}
+			}
+		}, "referee-acceptor");
+		acceptor.start();
+	}
+
+	/**
+	 * Stops accepting connections and ends every session.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException
+	{
+		serverSocket.close();
+		if (sessions != null)
+			sessions.shutdownNow();
+		else
+			for (SelectorLoop loop : selectorLoops)
+				loop.close();
+	}
+
+	/**
+	 *
+	 * @return The port the server listens on.
+	 */
+	public int getPort()
+	{
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 *
+	 * @return The number of games solved in all sessions so far.
+	 */
+	public long getNrGamesSolved()
+	{
+		return nrGamesSolved.get();
+	}
+
+	/**
+	 *
+	 * @return The number of guesses scored in all sessions so far.
+	 */
+	public long getNrGuessesScored()
+	{
+		return nrGuessesScored.get();
+	}
+
+	/**
+	 * Splits a request into its words.
+	 *
+	 * @param line
+	 * @return
+	 */
+	static String[] words(String line)
+	{
+		return line.trim().split("\\s+");
+	}
+
+	/**
+	 * Parses the colors of a code from the words of a request.
+	 *
+	 * @param words
+	 * @param nrPegs
+	 * @param nrColors
+	 * @return The code.
+	 * @throws IllegalArgumentException
+	 *             If the words are not a code of this size.
+	 */
+	static CodeSequence parseCode(String[] words, int nrPegs, int nrColors)
+	{
+		if (words.length - 1 != nrPegs)
+			throw new IllegalArgumentException("Expected " + nrPegs + " pegs");
+		int[] pegs = new int[nrPegs];
+		for (int i = 0; i < nrPegs; i++)
+		{
+			pegs[i] = Integer.parseInt(words[i + 1]);
+			if (pegs[i] < 1 || pegs[i] > nrColors)
+				throw new IllegalArgumentException("Colors run from 1 to "
+						+ nrColors);
+		}
+		return new CodeSequence(pegs);
+	}
+
+	/**
+	 * The games of one connection, played against its own Oracle.
+	 */
+	private class Session
+	{
+		private Oracle oracle;
+		private boolean playing;
+
+		/**
+		 * Carries out a request.
+		 *
+		 * @param line
+		 * @return The answer, which is an ERROR if the request is malformed.
+		 */
+		String answer(String line)
+		{
+			try
+			{
+				return answer(words(line));
+			}
+			catch (IllegalArgumentException e)
+			{
+				return "ERROR " + e.getMessage();
+			}
+		}
+
+		private String answer(String[] words)
+		{
+			String command = words[0].toUpperCase();
+			if (command.equals("GUESS"))
+			{
+				if (!playing)
+					throw new IllegalArgumentException("No game in progress");
+				Feedback feedback = oracle.getFeedbackFor(parseCode(words,
+						oracle.getNumPegs(), oracle.getNumPegColors()));
+				nrGuessesScored.incrementAndGet();
+				if (feedback.getBlack() == oracle.getNumPegs())
+				{
+					playing = false;
+					nrGamesSolved.incrementAndGet();
+				}
+				return "FEEDBACK " + feedback.getBlack() + " "
+						+ feedback.getWhite();
+			}
+			else if (command.equals("NEW"))
+			{
+				if (words.length != 3)
+					throw new IllegalArgumentException("Expected NEW <pegs> <colors>");
+				int nrPegs = Integer.parseInt(words[1]);
+				int nrColors = Integer.parseInt(words[2]);
+				if (nrPegs < 1 || nrPegs > MAX_PEGS || nrColors < 1
+						|| nrColors > MAX_COLORS)
+					throw new IllegalArgumentException("Games run up to "
+							+ MAX_PEGS + " pegs and " + MAX_COLORS + " colors");
+				if (oracle != null && oracle.getNumPegs() == nrPegs
+						&& oracle.getNumPegColors() == nrColors)
+					oracle.generateNextCode();
+				else
+					oracle = new Oracle(nrPegs, nrColors);
+				playing = true;
+				return "READY " + nrPegs + " " + nrColors;
+			}
+			else if (command.equals("SECRET"))
+			{
+				if (oracle == null)
+					throw new IllegalArgumentException("Choose the size of the game with NEW first");
+				oracle.setSecretCode(parseCode(words, oracle.getNumPegs(),
+						oracle.getNumPegColors()));
+				playing = true;
+				return "READY " + oracle.getNumPegs() + " "
+						+ oracle.getNumPegColors();
+			}
+			else if (command.equals("QUIT"))
+				return "BYE";
+			throw new IllegalArgumentException("Unknown request " + words[0]);
+		}
+	}
+
+	/**
+	 * One connection served by a thread of its own.
+	 */
+	private class Connection implements Runnable
+	{
+		private final Socket socket;
+		private final Session session = new Session();
+
+		Connection(Socket socket)
+		{
+			this.socket = socket;
+		}
+
+		public void run()
+		{
+			try
+			{
+				BufferedReader in = new BufferedReader(new InputStreamReader(
+						socket.getInputStream(), StandardCharsets.US_ASCII));
+				Writer out = new BufferedWriter(new OutputStreamWriter(
+						socket.getOutputStream(), StandardCharsets.US_ASCII));
+
+				String line;
+				while ((line = in.readLine()) != null)
+				{
+					String answer = session.answer(line);
+					out.write(answer);
+					out.write('\n');
+					if (answer.equals("BYE"))
+						break;
+					if (!in.ready())
+						out.flush();
+				}
+				out.flush();
+			}
+			catch (SocketException e)
+			{
+				// The client went away
+			}
+			catch (IOException e)
+			{
+				System.err.println("Session failed: " + e.getMessage());
+			}
+			finally
+			{
+				try
+				{
+					socket.close();
+				}
+				catch (IOException e)
+				{
+				}
+			}
+		}
+	}
+
+	/**
+	 * Serves many non-blocking connections on one thread, waking up only for
+	 * the ones that have requests to read or answers left to write.
+	 */
+	private class SelectorLoop implements Runnable
+	{
+		private final Selector selector;
+		private final ConcurrentLinkedQueue<SocketChannel> newChannels = new ConcurrentLinkedQueue<SocketChannel>();
+		private volatile boolean closed;
+
+		SelectorLoop() throws IOException
+		{
+			selector = Selector.open();
+		}
+
+		/**
+		 * Hands a connection to this loop.
+		 *
+		 * @param channel
+		 *            A non-blocking channel.
+		 */
+		void add(SocketChannel channel)
+		{
+			newChannels.add(channel);
+			selector.wakeup();
+		}
+
+		/**
+		 * Ends every connection of this loop and the loop itself.
+		 */
+		void close()
+		{
+			closed = true;
+			selector.wakeup();
+		}
+
+		public void run()
+		{
+			try
+			{
+				while (!closed)
+				{
+					selector.select();
+					SocketChannel channel;
+					while ((channel = newChannels.poll()) != null)
+						new ChannelConnection(channel, selector);
+
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while (keys.hasNext())
+					{
+						SelectionKey key = keys.next();
+						keys.remove();
+						ChannelConnection connection = (ChannelConnection) key.attachment();
+						try
+						{
+							if (key.isValid() && key.isReadable())
+								connection.read();
+							if (key.isValid() && key.isWritable())
+								connection.write();
+						}
+						catch (IOException e)
+						{
+							// The client went away
+							connection.close();
+						}
+						catch (RuntimeException e)
+						{
+							System.err.println("Session failed: " + e);
+							connection.close();
+						}
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				System.err.println("Selector failed: " + e.getMessage());
+			}
+			catch (ClosedSelectorException e)
+			{
+			}
+			finally
+			{
+				for (SocketChannel channel : newChannels)
+					closeQuietly(channel);
+				for (SelectionKey key : selector.keys())
+					closeQuietly(key.channel());
+				try
+				{
+					selector.close();
+				}
+				catch (IOException e)
+				{
+				}
+			}
+		}
+	}
+
+	/**
+	 * Closes a channel, ignoring a failure to.
+	 *
+	 * @param channel
+	 */
+	private static void closeQuietly(Channel channel)
+	{
+		try
+		{
+			channel.close();
+		}
+		catch (IOException e)
+		{
+		}
+	}
+
+	/**
+	 * One non-blocking connection. Requests are parsed out of its input
+	 * buffer as soon as their line is complete, and the answers to all the
+	 * requests of one read go out in one write. While answers are left to
+	 * write, no more requests are read, so a client that does not read its
+	 * answers cannot make the server buffer without end.
+	 */
+	private class ChannelConnection
+	{
+		private final SocketChannel channel;
+		private final SelectionKey key;
+		private final Session session = new Session();
+		private final ByteBuffer in = ByteBuffer.allocate(MAX_REQUEST_LENGTH);
+		private ByteBuffer out = ByteBuffer.allocate(MAX_REQUEST_LENGTH);
+		private boolean closing;
+
+		ChannelConnection(SocketChannel channel, Selector selector)
+				throws IOException
+		{
+			this.channel = channel;
+			key = channel.register(selector, SelectionKey.OP_READ, this);
+		}
+
+		/**
+		 * Reads what the client sent and answers every complete request.
+		 *
+		 * @throws IOException
+		 */
+		void read() throws IOException
+		{
+			boolean endOfStream = channel.read(in) < 0;
+			int lineStart = 0;
+			for (int i = 0; i < in.position() && !closing; i++)
+				if (in.get(i) == '\n')
+				{
+					answer(lineStart, i);
+					lineStart = i + 1;
+				}
+
+			if (endOfStream)
+			{
+				// Like readLine, answer a last request without a line end
+				if (lineStart < in.position() && !closing)
+					answer(lineStart, in.position());
+				closing = true;
+			}
+			else if (lineStart == 0 && !in.hasRemaining())
+			{
+				queue("ERROR Requests run up to " + MAX_REQUEST_LENGTH
+						+ " characters");
+				closing = true;
+			}
+			in.flip();
+			in.position(lineStart);
+			in.compact();
+			write();
+		}
+
+		private void answer(int from, int to)
+		{
+			String answer = session.answer(new String(in.array(), from, to
+					- from, StandardCharsets.US_ASCII));
+			queue(answer);
+			if (answer.equals("BYE"))
+				closing = true;
+		}
+
+		/**
+		 * Adds an answer to the output buffer, growing it if needed.
+		 *
+		 * @param answer
+		 */
+		private void queue(String answer)
+		{
+			if (out.remaining() < answer.length() + 1)
+			{
+				ByteBuffer larger = ByteBuffer.allocate(Math.max(
+						2 * out.capacity(), out.position() + answer.length() + 1));
+				out.flip();
+				larger.put(out);
+				out = larger;
+			}
+			for (int i = 0; i < answer.length(); i++)
+				out.put((byte) answer.charAt(i));
+			out.put((byte) '\n');
+		}
+
+		/**
+		 * Writes as much of the answers as the channel takes, waiting to be
+		 * writable again for the rest.
+		 *
+		 * @throws IOException
+		 */
+		void write() throws IOException
+		{
+			out.flip();
+			channel.write(out);
+			out.compact();
+			if (out.position() > 0)
+				key.interestOps(SelectionKey.OP_WRITE);
+			else if (closing)
+				close();
+			else
+				key.interestOps(SelectionKey.OP_READ);
+		}
+
+		void close()
+		{
+			key.cancel();
+			closeQuietly(channel);
+		}
+	}
+
+	/**
+	 * Runs a referee server until it is killed.
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args)
+	{
+		int port = 0;
+		for (int i = 0; i < args.length; i++)
+			if (args[i].equals("-port"))
+				port = Integer.parseInt(args[++i]);
+			else
+				System.out.println("Unknown command line argument - \""
+						+ args[i] + "\"");
+
+		try
+		{
+			RefereeServer server = new RefereeServer(port);
+			server.start();
+			System.out.println("Referee listening on port " + server.getPort());
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not start the referee: " + e.getMessage());
+			System.exit(-1);
+		}
+	}
+}
@@ -0,0 +1,595 @@
+package server;
+
+import game.Guesser;
+import game.KnuthDecisionTree;
+import game.KnuthGuesser;
+import game.Learner;
+import game.OpeningBook;
+import game.Oracle;
+import game.PartitionHeuristic;
+import game.SmartRandomGuesser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import data.CodeSequence;
+import data.Feedback;
+import data.FeedbackSpace;
+import data.PackedCode;
+
+/**
+ * The solver daemon hosts guesser sessions for clients that ask for one move
+ * at a time, so the JIT warmup and the shared feedback tables, decision trees
+ * and opening books are paid for once rather than on every invocation.
+ * Sessions are named by the client and live in the daemon rather than in a
+ * connection, so a client may reconnect or spread its sessions over several
+ * connections. The line protocol is:
+ *
+ *  START <session> <knuth|random|learner> <pegs> <colors>	(Starts a game, creating the session or reusing its guesser;
+ *  							answered by GUESS <session> <color> ...)
+ *  FEEDBACK <session> <blacks> <whites>	(Gives the feedback for the last guess, answered by the next GUESS, or by
+ *  							SOLVED <session> <guesses> once all pegs are black)
+ *  END <session>				(Drops the session, answered by ENDED <session>)
+ *  QUIT						(Ends the connection, answered by BYE)
+ *
+ * Anything else is answered by ERROR <reason>. Requests may be pipelined.
+ * A learner session learns from every game it solves, so the session is kept
+ * between games.
+ *
+ * Memory is bounded per session: the Knuth guesser is only offered for code
+ * spaces whose candidate bitset stays within a megabyte, the smart random
+ * guesser only keeps its consistent codes for small spaces and a learner
+ * stops adding patterns once it knows Learner.MAX_NR_PATTERNS. The number of
+ * sessions is bounded too; when it is reached, the least recently used
+ * session is dropped to make room. Sessions are held in an access-ordered map
+ * behind one lock, so finding, dropping and adding a session is one step.
+ *
+ *  Usage:
+ *  -port <int>	(Listens on the specified port of the loopback address, on a free port by default)
+ *  -h <String>	(Sets the heuristic the Knuth sessions rate guesses with: worst, expected, entropy or parts)
+ *  -d		 	(Makes Knuth sessions follow decision trees where one can be compiled)
+ *  -o		 	(Takes the first two guesses of every session from opening books)
+ *  -s <int> 	(Sets the maximum number of sessions, defaults to 10000)
+ *  -w		 	(Warms up by playing games of the standard size before listening)
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ */
+public class SolverDaemon
+{
+	public static final long MAX_KNUTH_SPACE_SIZE = 1L << 23;
+	public static final long MAX_STORED_SPACE_SIZE = 1L << 16;
+
+	private static final int DEFAULT_MAX_SESSIONS = 10000;
+	private static final int NR_WARMUP_GAMES = 200;
+
+	private final ServerSocket serverSocket;
+	private final ExecutorService connections;
+	private final LinkedHashMap<String, Session> sessions;
+	private final PartitionHeuristic heuristic;
+	private final boolean useDecisionTrees;
+	private final boolean useOpeningBooks;
+	private final int maxSessions;
+
+	/**
+	 * Binds the daemon to a port of the loopback address.
+	 *
+	 * @param port
+	 *            The port, or 0 for any free port.
+	 * @param heuristic
+	 *            The heuristic of the Knuth sessions.
+	 * @param useDecisionTrees
+	 * @param useOpeningBooks
+	 * @param maxSessions
+	 * @throws IOException
+	 */
+	public SolverDaemon(int port, PartitionHeuristic heuristic,
+			boolean useDecisionTrees, boolean useOpeningBooks, int maxSessions)
+			throws IOException
+	{
+		this.heuristic = heuristic;
+		this.useDecisionTrees = useDecisionTrees;
+		this.useOpeningBooks = useOpeningBooks;
+		this.maxSessions = maxSessions;
+		sessions = new LinkedHashMap<String, Session>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, Session> eldest)
+			{
+				return size() > SolverDaemon.this.maxSessions;
+			}
+		};
+		serverSocket = new ServerSocket();
+		serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+				port));
+		connections = RefereeServer.newPerTaskExecutor();
+	}
+
+	/**
+	 * Starts accepting connections on a background thread.
+	 */
+	public void start()
+	{
+		Thread acceptor = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				while (!serverSocket.isClosed())
+				{
+					try
+					{
+						Socket socket = serverSocket.accept();
+						socket.setTcpNoDelay(true);
+						RefereeServer.serve(connections, socket,
+								new Connection(socket));
+					}
+					catch (IOException e)
+					{
+						if (!serverSocket.isClosed())
+							System.err.println("Could not accept a connection: "
+									+ e.getMessage());
+					}
+				}
+			}
+		}, "solver-acceptor");
+		acceptor.start();
+	}
+
+	/**
+	 * Stops accepting connections and drops every session.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException
+	{
+		serverSocket.close();
+		connections.shutdownNow();
+		synchronized (sessions)
+		{
+			sessions.clear();
+		}
+	}
+
+	/**
+	 *
+	 * @return The port the daemon listens on.
+	 */
+	public int getPort()
+	{
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 *
+	 * @return The number of sessions held.
+	 */
+	public int getNrSessions()
+	{
+		synchronized (sessions)
+		{
+			return sessions.size();
+		}
+	}
+
+	/**
+	 * Plays games of the standard size with every kind of guesser, so the
+	 * first clients find the JIT warm and the shared tables built.
+	 */
+	public void warmUp()
+	{
+		String[] kinds = { "knuth", "random", "learner" };
+		Oracle oracle = new Oracle(4, 6);
+		for (int k = 0; k < kinds.length; k++)
+		{
+			Guesser guesser = createGuesser(kinds[k], 4, 6);
+			for (int gameNr = 0; gameNr < NR_WARMUP_GAMES; gameNr++)
+			{
+				oracle.generateNextCode();
+				Feedback feedback;
+				do
+				{
+					feedback = oracle.getFeedbackFor(guesser.guess());
+					guesser.giveFeedbackForLastGuess(feedback);
+				}
+				while (feedback.getBlack() < 4);
+				guesser.reset();
+			}
+		}
+	}
+
+	/**
+	 * Creates the guesser of a session.
+	 *
+	 * @param kind
+	 *            knuth, random or learner.
+	 * @param nrPegs
+	 * @param nrColors
+	 * @return The guesser.
+	 * @throws IllegalArgumentException
+	 *             If the kind is unknown or the game too large for it.
+	 */
+	private Guesser createGuesser(String kind, int nrPegs, int nrColors)
+	{
+		if (nrPegs < 1 || nrPegs > RefereeServer.MAX_PEGS || nrColors < 1
+				|| nrColors > RefereeServer.MAX_COLORS)
+			throw new IllegalArgumentException("Games run up to "
+					+ RefereeServer.MAX_PEGS + " pegs and "
+					+ RefereeServer.MAX_COLORS + " colors");
+
+		OpeningBook book = null;
+		boolean canUseKnuth = KnuthGuesser.canSolve(nrPegs, nrColors)
+				&& PackedCode.spaceSize(nrPegs, nrColors) <= MAX_KNUTH_SPACE_SIZE;
+		if (useOpeningBooks && canUseKnuth)
+			book = OpeningBook.forSpace(nrPegs, nrColors, heuristic, 1);
+
+		if (kind.equals("knuth"))
+		{
+			if (!canUseKnuth)
+				throw new IllegalArgumentException("Too many codes for the Knuth Guesser");
+			KnuthGuesser knuthGuesser = new KnuthGuesser(nrPegs, nrColors,
+					heuristic, 1);
+			if (useDecisionTrees)
+				knuthGuesser.setDecisionTree(KnuthDecisionTree.forSpace(
+						nrPegs, nrColors, heuristic, 1));
+			knuthGuesser.setOpeningBook(book);
+			return knuthGuesser;
+		}
+		else if (kind.equals("random"))
+		{
+			SmartRandomGuesser randomGuesser = new SmartRandomGuesser(nrPegs,
+					nrColors);
+			randomGuesser.limitCandidateStore(MAX_STORED_SPACE_SIZE);
+			randomGuesser.setOpeningBook(book);
+			return randomGuesser;
+		}
+		else if (kind.equals("learner"))
+		{
+			Learner learner = new Learner(nrPegs, nrColors);
+			learner.setOpeningBook(book);
+			return learner;
+		}
+		throw new IllegalArgumentException("Unknown guesser " + kind);
+	}
+
+	/**
+	 * Finds the session to start a game in, creating it if there is none of
+	 * this kind and size, which drops the least recently used session if the
+	 * daemon is full. The guesser is created outside the lock, as it may have
+	 * to build tables first; if another START for the same name adds a
+	 * session meanwhile, that session is used instead.
+	 *
+	 * @param name
+	 * @param kind
+	 * @param nrPegs
+	 * @param nrColors
+	 * @return The session.
+	 */
+	private Session startSession(String name, String kind, int nrPegs,
+			int nrColors)
+	{
+		synchronized (sessions)
+		{
+			Session session = sessions.get(name);
+			if (session != null && session.isFor(kind, nrPegs, nrColors))
+				return session;
+		}
+		Session newSession = new Session(kind, nrPegs, nrColors,
+				createGuesser(kind, nrPegs, nrColors));
+		synchronized (sessions)
+		{
+			Session session = sessions.get(name);
+			if (session != null && session.isFor(kind, nrPegs, nrColors))
+				return session;
+			sessions.put(name, newSession);
+			return newSession;
+		}
+	}
+
+	/**
+	 * One guesser playing games for a client.
+	 */
+	private static class Session
+	{
+		final String kind;
+		final int nrPegs;
+		final int nrColors;
+		final Guesser guesser;
+		final FeedbackSpace feedbackSpace;
+		boolean playing;
+		int nrGuesses;
+
+		Session(String kind, int nrPegs, int nrColors, Guesser guesser)
+		{
+			this.kind = kind;
+			this.nrPegs = nrPegs;
+			this.nrColors = nrColors;
+			this.guesser = guesser;
+			feedbackSpace = FeedbackSpace.forPegs(nrPegs);
+		}
+
+		boolean isFor(String kind, int nrPegs, int nrColors)
+		{
+			return this.kind.equals(kind) && this.nrPegs == nrPegs
+					&& this.nrColors == nrColors;
+		}
+	}
+
+	/**
+	 * One client connection, which may drive any number of sessions.
+	 */
+	private class Connection implements Runnable
+	{
+		private final Socket socket;
+
+		Connection(Socket socket)
+		{
+			this.socket = socket;
+		}
+
+		public void run()
+		{
+			try
+			{
+				BufferedReader in = new BufferedReader(new InputStreamReader(
+						socket.getInputStream(), StandardCharsets.US_ASCII));
+				Writer out = new BufferedWriter(new OutputStreamWriter(
+						socket.getOutputStream(), StandardCharsets.US_ASCII));
+
+				String line;
+				while ((line = in.readLine()) != null)
+				{
+					String answer;
+					try
+					{
+						answer = answer(RefereeServer.words(line));
+					}
+					catch (RuntimeException e)
+					{
+						answer = "ERROR "
+								+ (e.getMessage() != null ? e.getMessage()
+										: e.toString());
+					}
+					out.write(answer);
+					out.write('\n');
+					if (answer.equals("BYE"))
+						break;
+					if (!in.ready())
+						out.flush();
+				}
+				out.flush();
+			}
+			catch (SocketException e)
+			{
+				// The client went away
+			}
+			catch (IOException e)
+			{
+				System.err.println("Connection failed: " + e.getMessage());
+			}
+			finally
+			{
+				try
+				{
+					socket.close();
+				}
+				catch (IOException e)
+				{
+				}
+			}
+		}
+
+		/**
+		 * Carries out a request.
+		 *
+		 * @param words
+		 * @return The answer.
+		 * @throws IllegalArgumentException
+		 *             If the request is malformed.
+		 * @throws RuntimeException
+		 *             If the guesser fails, which ends the game.
+		 */
+		private String answer(String[] words)
+		{
+			String command = words[0].toUpperCase();
+			if (command.equals("FEEDBACK"))
+			{
+				if (words.length != 4)
+					throw new IllegalArgumentException("Expected FEEDBACK <session> <blacks> <whites>");
+				Session session = getSession(words[1]);
+				synchronized (session)
+				{
+					if (!session.playing)
+						throw new IllegalArgumentException("No game in progress for "
+								+ words[1]);
+					int ordinal = session.feedbackSpace.ordinalOf(
+							Integer.parseInt(words[2]),
+							Integer.parseInt(words[3]));
+					if (ordinal < 0)
+						throw new IllegalArgumentException("No such feedback for "
+								+ session.nrPegs + " pegs");
+					Feedback feedback = session.feedbackSpace.get(ordinal);
+					try
+					{
+						session.guesser.giveFeedbackForLastGuess(feedback);
+					}
+					catch (RuntimeException e)
+					{
+						endFailedGame(words[1], session);
+						throw e;
+					}
+					if (feedback.getBlack() == session.nrPegs)
+					{
+						session.playing = false;
+						session.guesser.reset();
+						return "SOLVED " + words[1] + " " + session.nrGuesses;
+					}
+					return nextGuess(words[1], session);
+				}
+			}
+			else if (command.equals("START"))
+			{
+				if (words.length != 5)
+					throw new IllegalArgumentException("Expected START <session> <guesser> <pegs> <colors>");
+				String kind = words[2].toLowerCase();
+				int nrPegs = Integer.parseInt(words[3]);
+				int nrColors = Integer.parseInt(words[4]);
+
+				Session session = startSession(words[1], kind, nrPegs,
+						nrColors);
+				synchronized (session)
+				{
+					if (session.playing)
+						session.guesser.reset();
+					session.playing = true;
+					session.nrGuesses = 0;
+					return nextGuess(words[1], session);
+				}
+			}
+			else if (command.equals("END"))
+			{
+				if (words.length != 2)
+					throw new IllegalArgumentException("Expected END <session>");
+				synchronized (sessions)
+				{
+					sessions.remove(words[1]);
+				}
+				return "ENDED " + words[1];
+			}
+			else if (command.equals("QUIT"))
+				return "BYE";
+			throw new IllegalArgumentException("Unknown request " + words[0]);
+		}
+
+		private Session getSession(String name)
+		{
+			Session session;
+			synchronized (sessions)
+			{
+				session = sessions.get(name);
+			}
+			if (session == null)
+				throw new IllegalArgumentException("No session " + name);
+			return session;
+		}
+
+		/**
+		 * Asks the session's guesser for its next guess. A guesser that fails
+		 * ends the game, as the feedback it was given cannot be trusted.
+		 *
+		 * @param name
+		 * @param session
+		 * @return The answer.
+		 */
+		private String nextGuess(String name, Session session)
+		{
+			CodeSequence guess;
+			try
+			{
+				guess = session.guesser.guess();
+			}
+			catch (RuntimeException e)
+			{
+				endFailedGame(name, session);
+				throw e;
+			}
+			session.nrGuesses++;
+			return "GUESS " + name + " " + guess;
+		}
+
+		/**
+		 * Ends a game its guesser failed in. A guesser that cannot even be
+		 * reset is dropped with its session.
+		 *
+		 * @param name
+		 * @param session
+		 */
+		private void endFailedGame(String name, Session session)
+		{
+			session.playing = false;
+			try
+			{
+				session.guesser.reset();
+			}
+			catch (RuntimeException e)
+			{
+				synchronized (sessions)
+				{
+					sessions.remove(name, session);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs a solver daemon until it is killed.
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args)
+	{
+		int port = 0;
+		PartitionHeuristic heuristic = PartitionHeuristic.WORST_CASE;
+		boolean useDecisionTrees = false;
+		boolean useOpeningBooks = false;
+		boolean warmUp = false;
+		int maxSessions = DEFAULT_MAX_SESSIONS;
+		for (int i = 0; i < args.length; i++)
+			if (args[i].equals("-port"))
+				port = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-h"))
+			{
+				heuristic = PartitionHeuristic.forName(args[++i]);
+				if (heuristic == null)
+				{
+					System.err.println("Unknown heuristic - \"" + args[i]
+							+ "\"");
+					System.exit(-1);
+				}
+			}
+			else if (args[i].equals("-d"))
+				useDecisionTrees = true;
+			else if (args[i].equals("-o"))
+				useOpeningBooks = true;
+			else if (args[i].equals("-s"))
+				maxSessions = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-w"))
+				warmUp = true;
+			else
+				System.out.println("Unknown command line argument - \""
+						+ args[i] + "\"");
+
+		try
+		{
+			SolverDaemon daemon = new SolverDaemon(port, heuristic,
+					useDecisionTrees, useOpeningBooks, maxSessions);
+			if (warmUp)
+			{
+				long start = System.currentTimeMillis();
+				daemon.warmUp();
+				System.out.println("Warmed up in "
+						+ (System.currentTimeMillis() - start) / 1000.0
+						+ " seconds...");
+			}
+			daemon.start();
+			System.out.println("Solver listening on port " + daemon.getPort());
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not start the solver: " + e.getMessage());
+			System.exit(-1);
+		}
+	}
+}
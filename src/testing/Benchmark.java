@@ -0,0 +1,493 @@
+package testing;
+
+import game.Guesser;
+import game.KnuthGuesser;
+import game.Learner;
+import game.Oracle;
+import game.PartitionHeuristic;
+import game.SmartRandomGuesser;
+
+import java.util.ArrayList;
+
+import data.CodeSequence;
+import data.ColorSpace;
+import data.Feedback;
+import data.PackedCode;
+import data.RandomGuess;
+import data.RandomSource;
+
+/**
+ * Microbenchmarks for the hot paths of the solver, run over a grid of pegs
+ * and colors. Every benchmark is warmed up and then measured over several
+ * timed iterations, and the time per operation is reported with its standard
+ * deviation across iterations. Results are folded into a sink so the work
+ * cannot be optimized away. Random numbers are seeded, so every run measures
+ * the same codes. The guesser benchmarks time one guess() per operation:
+ * scoring the guess and giving the guesser its feedback happen untimed,
+ * while preparing the next run.
+ *
+ *  Usage:
+ *  -p <int,...>	(Sets the numbers of pegs to benchmark, defaults to 4,5,6)
+ *  -c <int,...>	(Sets the numbers of colors to benchmark, defaults to 6,8)
+ *  -b <String,...>	(Runs only the named benchmarks: feedback, batchFeedback, randomGuess, permutationGuess,
+ *               feedbackGuess, knuthGuess, smartRandomGuess and learnerStudy)
+ *  -w <int> 	(Sets the number of warmup iterations, defaults to 3)
+ *  -i <int> 	(Sets the number of measured iterations, defaults to 5)
+ *  -m <int> 	(Sets the length of an iteration in milliseconds, defaults to 500)
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ */
+public class Benchmark
+{
+	private static final String NR_PEGS = "-p";
+	private static final String NR_COLORS = "-c";
+	private static final String BENCHMARKS = "-b";
+	private static final String NR_WARMUP_ITERATIONS = "-w";
+	private static final String NR_ITERATIONS = "-i";
+	private static final String ITERATION_MILLIS = "-m";
+
+	private static final long SEED = 471;
+	private static final int NR_CODES = 1024;
+	private static final long MAX_KNUTH_SPACE_SIZE = 1 << 16;
+	private static final int MAX_WALL_CLOCK_FACTOR = 10;
+
+	private static int[] pegCounts = { 4, 5, 6 };
+	private static int[] colorCounts = { 6, 8 };
+	private static String[] benchmarkNames = null;
+	private static int nrWarmupIterations = 3;
+	private static int nrIterations = 5;
+	private static int iterationMillis = 500;
+
+	private static long sink = 0;
+
+	/**
+	 * One benchmarked operation for a given number of pegs and colors.
+	 */
+	private static abstract class Case
+	{
+		final String name;
+		int nrPegs;
+		int nrColors;
+
+		Case(String name)
+		{
+			this.name = name;
+		}
+
+		/**
+		 * Prepares the inputs of the benchmark, untimed.
+		 *
+		 * @return False if the benchmark does not apply to this size.
+		 */
+		boolean setUp(int nrPegs, int nrColors)
+		{
+			this.nrPegs = nrPegs;
+			this.nrColors = nrColors;
+			return true;
+		}
+
+		/**
+		 * Prepares a single run, untimed.
+		 */
+		void beforeRun()
+		{
+		}
+
+		/**
+		 * Runs the timed work.
+		 *
+		 * @return The number of operations performed.
+		 */
+		abstract int run();
+	}
+
+	/**
+	 * Times single guesses of a guesser playing games against an Oracle.
+	 */
+	private static abstract class GuessCase extends Case
+	{
+		Guesser guesser;
+		Oracle oracle;
+		CodeSequence lastGuess;
+
+		GuessCase(String name)
+		{
+			super(name);
+		}
+
+		/**
+		 * Creates the guesser, or returns null if it does not play this size.
+		 */
+		abstract Guesser createGuesser(int nrPegs, int nrColors);
+
+		boolean setUp(int nrPegs, int nrColors)
+		{
+			super.setUp(nrPegs, nrColors);
+			guesser = createGuesser(nrPegs, nrColors);
+			oracle = new Oracle(nrPegs, nrColors);
+			lastGuess = null;
+			return guesser != null;
+		}
+
+		/**
+		 * Scores the last guess and hands its feedback to the guesser, or
+		 * starts a new game once the last one is solved.
+		 */
+		void beforeRun()
+		{
+			if (lastGuess != null)
+			{
+				Feedback feedback = oracle.getFeedbackFor(lastGuess);
+				if (feedback.getBlack() < nrPegs)
+				{
+					guesser.giveFeedbackForLastGuess(feedback);
+					return;
+				}
+			}
+			oracle.generateNextCode();
+			guesser.reset();
+		}
+
+		int run()
+		{
+			lastGuess = guesser.guess();
+			sink += lastGuess.getPegColorAt(0);
+			return 1;
+		}
+	}
+
+	/**
+	 * Creates every benchmark.
+	 *
+	 * @return
+	 */
+	private static ArrayList<Case> createCases()
+	{
+		ArrayList<Case> cases = new ArrayList<Case>();
+
+		cases.add(new Case("feedback")
+		{
+			CodeSequence[] secrets;
+			CodeSequence[] guesses;
+
+			boolean setUp(int nrPegs, int nrColors)
+			{
+				super.setUp(nrPegs, nrColors);
+				secrets = randomCodes(nrPegs, nrColors);
+				guesses = randomCodes(nrPegs, nrColors);
+				return true;
+			}
+
+			int run()
+			{
+				for (int i = 0; i < secrets.length; i++)
+					sink += secrets[i].getFeedbackFor(guesses[i]).getValue();
+				return secrets.length;
+			}
+		});
+
+		cases.add(new Case("batchFeedback")
+		{
+			Oracle oracle;
+			long[] guesses;
+			int[] ordinals;
+
+			boolean setUp(int nrPegs, int nrColors)
+			{
+				super.setUp(nrPegs, nrColors);
+				if (!PackedCode.isPackable(nrPegs, nrColors))
+					return false;
+				oracle = new Oracle(nrPegs, nrColors);
+				CodeSequence[] codes = randomCodes(nrPegs, nrColors);
+				guesses = new long[codes.length];
+				for (int i = 0; i < codes.length; i++)
+					guesses[i] = codes[i].getPacked();
+				ordinals = new int[codes.length];
+				return true;
+			}
+
+			int run()
+			{
+				oracle.getFeedbackOrdinals(guesses, guesses.length, ordinals);
+				sink += ordinals[0];
+				return guesses.length;
+			}
+		});
+
+		cases.add(new Case("randomGuess")
+		{
+			ColorSpace colors;
+
+			boolean setUp(int nrPegs, int nrColors)
+			{
+				super.setUp(nrPegs, nrColors);
+				colors = new ColorSpace(nrColors);
+				return true;
+			}
+
+			int run()
+			{
+				for (int i = 0; i < NR_CODES; i++)
+					sink += new RandomGuess(colors, nrPegs).getPegColorAt(0);
+				return NR_CODES;
+			}
+		});
+
+		cases.add(new Case("permutationGuess")
+		{
+			CodeSequence[] codes;
+
+			boolean setUp(int nrPegs, int nrColors)
+			{
+				super.setUp(nrPegs, nrColors);
+				codes = randomCodes(nrPegs, nrColors);
+				return true;
+			}
+
+			int run()
+			{
+				for (int i = 0; i < codes.length; i++)
+					sink += new RandomGuess(codes[i]).getPegColorAt(0);
+				return codes.length;
+			}
+		});
+
+		cases.add(new Case("feedbackGuess")
+		{
+			ColorSpace colors;
+			CodeSequence[] codes;
+			Feedback[] feedbacks;
+
+			boolean setUp(int nrPegs, int nrColors)
+			{
+				super.setUp(nrPegs, nrColors);
+				colors = new ColorSpace(nrColors);
+				codes = randomCodes(nrPegs, nrColors);
+				CodeSequence[] secrets = randomCodes(nrPegs, nrColors);
+				feedbacks = new Feedback[codes.length];
+				for (int i = 0; i < codes.length; i++)
+					feedbacks[i] = secrets[i].getFeedbackFor(codes[i]);
+				return true;
+			}
+
+			int run()
+			{
+				for (int i = 0; i < codes.length; i++)
+					sink += new RandomGuess(colors, codes[i], feedbacks[i])
+							.getPegColorAt(0);
+				return codes.length;
+			}
+		});
+
+		cases.add(new GuessCase("knuthGuess")
+		{
+			Guesser createGuesser(int nrPegs, int nrColors)
+			{
+				if (!KnuthGuesser.canSolve(nrPegs, nrColors)
+						|| Math.pow(nrColors, nrPegs) > MAX_KNUTH_SPACE_SIZE)
+					return null;
+				return new KnuthGuesser(nrPegs, nrColors,
+						PartitionHeuristic.WORST_CASE, 1);
+			}
+		});
+
+		cases.add(new GuessCase("smartRandomGuess")
+		{
+			Guesser createGuesser(int nrPegs, int nrColors)
+			{
+				return new SmartRandomGuesser(nrPegs, nrColors);
+			}
+		});
+
+		cases.add(new Case("learnerStudy")
+		{
+			Learner learner;
+			Oracle oracle;
+
+			boolean setUp(int nrPegs, int nrColors)
+			{
+				super.setUp(nrPegs, nrColors);
+				learner = new Learner(nrPegs, nrColors);
+				oracle = new Oracle(nrPegs, nrColors);
+				return true;
+			}
+
+			void beforeRun()
+			{
+				oracle.generateNextCode();
+				playGame(learner, oracle);
+			}
+
+			int run()
+			{
+				// Resetting after a game is when the learner studies it
+				learner.reset();
+				return 1;
+			}
+		});
+
+		return cases;
+	}
+
+	/**
+	 * Plays one game to the end.
+	 *
+	 * @param guesser
+	 * @param oracle
+	 * @return The number of guesses it took.
+	 */
+	private static int playGame(Guesser guesser, Oracle oracle)
+	{
+		int nrGuesses = 0;
+		while (true)
+		{
+			Feedback feedback = oracle.getFeedbackFor(guesser.guess());
+			guesser.giveFeedbackForLastGuess(feedback);
+			nrGuesses++;
+			if (feedback.getBlack() == oracle.getNumPegs())
+				return nrGuesses;
+		}
+	}
+
+	/**
+	 * Measures one benchmark for its current size.
+	 *
+	 * @param benchmark
+	 * @return The time per operation in nanoseconds of every measured
+	 *         iteration.
+	 */
+	private static double[] measure(Case benchmark)
+	{
+		for (int i = 0; i < nrWarmupIterations; i++)
+			runIteration(benchmark);
+
+		double[] nanosPerOp = new double[nrIterations];
+		for (int i = 0; i < nrIterations; i++)
+			nanosPerOp[i] = runIteration(benchmark);
+		return nanosPerOp;
+	}
+
+	/**
+	 * Runs a benchmark until an iteration's worth of time was spent in its
+	 * timed part, or MAX_WALL_CLOCK_FACTOR times that in all, for benchmarks
+	 * whose untimed preparation outweighs the work they time.
+	 *
+	 * @param benchmark
+	 * @return The time per operation in nanoseconds.
+	 */
+	private static double runIteration(Case benchmark)
+	{
+		long iterationNanos = iterationMillis * 1000000L;
+		long iterationStart = System.nanoTime();
+		long elapsed = 0;
+		long nrOps = 0;
+		while (elapsed < iterationNanos
+				&& System.nanoTime() - iterationStart < MAX_WALL_CLOCK_FACTOR
+						* iterationNanos)
+		{
+			benchmark.beforeRun();
+			long start = System.nanoTime();
+			nrOps += benchmark.run();
+			elapsed += System.nanoTime() - start;
+		}
+		return elapsed / (double) nrOps;
+	}
+
+	/**
+	 *
+	 * @param nrPegs
+	 * @param nrColors
+	 * @return Random codes from the current thread's seeded generator.
+	 */
+	private static CodeSequence[] randomCodes(int nrPegs, int nrColors)
+	{
+		ColorSpace colors = new ColorSpace(nrColors);
+		CodeSequence[] codes = new CodeSequence[NR_CODES];
+		for (int i = 0; i < codes.length; i++)
+			codes[i] = new RandomGuess(colors, nrPegs);
+		return codes;
+	}
+
+	/**
+	 * Sets up the command line arguments.
+	 *
+	 * @param args
+	 */
+	private static void verifyArgsAndSetup(String[] args)
+	{
+		for (int i = 0; i < args.length; i++)
+			if (args[i].equals(NR_PEGS))
+				pegCounts = parseInts(args[++i]);
+			else if (args[i].equals(NR_COLORS))
+				colorCounts = parseInts(args[++i]);
+			else if (args[i].equals(BENCHMARKS))
+				benchmarkNames = args[++i].split(",");
+			else if (args[i].equals(NR_WARMUP_ITERATIONS))
+				nrWarmupIterations = Integer.parseInt(args[++i]);
+			else if (args[i].equals(NR_ITERATIONS))
+				nrIterations = Integer.parseInt(args[++i]);
+			else if (args[i].equals(ITERATION_MILLIS))
+				iterationMillis = Integer.parseInt(args[++i]);
+			else
+				System.out.println("Unknown command line argument - \""
+						+ args[i] + "\"");
+	}
+
+	private static int[] parseInts(String list)
+	{
+		String[] values = list.split(",");
+		int[] ints = new int[values.length];
+		for (int i = 0; i < values.length; i++)
+			ints[i] = Integer.parseInt(values[i].trim());
+		return ints;
+	}
+
+	private static boolean isSelected(Case benchmark)
+	{
+		if (benchmarkNames == null)
+			return true;
+		for (int i = 0; i < benchmarkNames.length; i++)
+			if (benchmarkNames[i].equals(benchmark.name))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Main method for execution.
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args)
+	{
+		verifyArgsAndSetup(args);
+
+		System.out.println(String.format("%-18s %5s %7s %14s %12s", "BENCHMARK",
+				"PEGS", "COLORS", "NS/OP", "+/- NS"));
+		for (Case benchmark : createCases())
+		{
+			if (!isSelected(benchmark))
+				continue;
+			for (int nrPegs : pegCounts)
+				for (int nrColors : colorCounts)
+				{
+					RandomSource.seed(SEED);
+					if (!benchmark.setUp(nrPegs, nrColors))
+						continue;
+					double[] nanosPerOp = measure(benchmark);
+
+					double mean = 0;
+					for (double value : nanosPerOp)
+						mean += value / nanosPerOp.length;
+					double variance = 0;
+					for (double value : nanosPerOp)
+						variance += (value - mean) * (value - mean)
+								/ Math.max(1, nanosPerOp.length - 1);
+					System.out.println(String.format("%-18s %5d %7d %14.1f %12.1f",
+							benchmark.name, nrPegs, nrColors, mean,
+							Math.sqrt(variance)));
+				}
+		}
+		if (sink == 42)
+			System.out.println();
+	}
+}
@@ -0,0 +1,173 @@
+package testing;
+
+import game.Guesser;
+import game.Learner;
+import game.SmartRandomGuesser;
+
+import java.util.BitSet;
+
+import data.CodeSequence;
+import data.CodeSpace;
+import data.FeedbackSpace;
+import data.RandomSource;
+
+/**
+ * Checks that the random guessers give up on feedback no secret code could
+ * have given, rather than guessing forever. Every game answers the first
+ * guess with a feedback it cannot receive, if there is one, and every later
+ * guess with a random feedback, so the feedback soon contradicts itself. A
+ * guesser passes if every turn returns in time and it either keeps guessing
+ * or throws an IllegalStateException. The check exits with -1 on failure.
+ *
+ *  Usage:
+ *  -p <int> 	(Sets the number of pegs, defaults to 4)
+ *  -c <int> 	(Sets the number of colors, defaults to 6)
+ *  -g <int> 	(Sets the number of games per guesser, defaults to 100)
+ *  -s <long> 	(Seeds the random numbers, defaults to 1)
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ */
+public class FeedbackCheck
+{
+	private static final int MAX_NR_GUESSES = 10;
+	private static final long TIMEOUT_MILLIS = 60000;
+
+	private static int nrPegs = 4;
+	private static int nrColors = 6;
+	private static int nrGames = 100;
+	private static long seed = 1;
+
+	/**
+	 * Runs the check for the Smart Random Guesser and the Learner.
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args)
+	{
+		for (int i = 0; i < args.length; i++)
+			if (args[i].equals("-p"))
+				nrPegs = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-c"))
+				nrColors = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-g"))
+				nrGames = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-s"))
+				seed = Long.parseLong(args[++i]);
+			else
+				System.out.println("Unknown command line argument - \""
+						+ args[i] + "\"");
+
+		boolean passed = check("random", new SmartRandomGuesser(nrPegs,
+				nrColors));
+		passed &= check("learner", new Learner(nrPegs, nrColors));
+		if (!passed)
+			System.exit(-1);
+	}
+
+	/**
+	 * Plays the games on a thread of their own, so a guesser that never
+	 * returns can be reported.
+	 *
+	 * @param name
+	 * @param guesser
+	 * @return Whether the guesser passed.
+	 */
+	private static boolean check(String name, final Guesser guesser)
+	{
+		final int[] nrRejectedGames = new int[1];
+		final RuntimeException[] failure = new RuntimeException[1];
+		Thread player = new Thread()
+		{
+			public void run()
+			{
+				try
+				{
+					for (int gameNr = 0; gameNr < nrGames; gameNr++)
+						if (playGame(guesser, gameNr))
+							nrRejectedGames[0]++;
+				}
+				catch (RuntimeException e)
+				{
+					failure[0] = e;
+				}
+			}
+		};
+		player.setDaemon(true);
+		player.start();
+		try
+		{
+			player.join(TIMEOUT_MILLIS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		if (player.isAlive())
+		{
+			System.out.println(name + ": FAILED, still guessing after "
+					+ TIMEOUT_MILLIS / 1000 + " seconds at");
+			for (StackTraceElement element : player.getStackTrace())
+				System.out.println("\t" + element);
+			return false;
+		}
+		if (failure[0] != null)
+		{
+			System.out.println(name + ": FAILED with " + failure[0]);
+			return false;
+		}
+		System.out.println(name + ": passed, rejected the feedback of "
+				+ nrRejectedGames[0] + " of " + nrGames + " games");
+		return true;
+	}
+
+	/**
+	 * Plays one game against contradictory feedback.
+	 *
+	 * @param guesser
+	 * @param gameNr
+	 * @return Whether the guesser rejected the feedback.
+	 */
+	private static boolean playGame(Guesser guesser, int gameNr)
+	{
+		RandomSource.seed(seed, gameNr);
+		FeedbackSpace feedbackSpace = FeedbackSpace.forPegs(nrPegs);
+		guesser.reset();
+		try
+		{
+			for (int guessNr = 0; guessNr < MAX_NR_GUESSES; guessNr++)
+			{
+				CodeSequence guess = guesser.guess();
+				int ordinal = (guessNr == 0) ? unreachableOrdinal(guess,
+						feedbackSpace) : -1;
+				while (ordinal < 0 || ordinal == feedbackSpace.winningOrdinal())
+					ordinal = RandomSource.nextInt(feedbackSpace.size());
+				guesser.giveFeedbackForLastGuess(feedbackSpace.get(ordinal));
+			}
+		}
+		catch (IllegalStateException e)
+		{
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Looks for a feedback no code gives a guess.
+	 *
+	 * @param guess
+	 * @param feedbackSpace
+	 * @return The ordinal of the feedback, or -1 if every feedback can be
+	 *         given.
+	 */
+	private static int unreachableOrdinal(CodeSequence guess,
+			FeedbackSpace feedbackSpace)
+	{
+		CodeSpace codeSpace = CodeSpace.forSpace(nrPegs, nrColors);
+		BitSet reachable = new BitSet(feedbackSpace.size());
+		for (long rank = 0; rank < codeSpace.size(); rank++)
+			reachable.set(guess.getFeedbackOrdinalFor(codeSpace.sequenceAt(rank)));
+		return (reachable.nextClearBit(0) < feedbackSpace.size()) ? reachable
+				.nextClearBit(0) : -1;
+	}
+}
@@ -0,0 +1,123 @@
+package testing;
+
+import game.GuesserMetrics;
+
+import java.io.PrintStream;
+
+/**
+ * Running statistics over a number of played games. When games are played in
+ * parallel, every worker keeps its own statistics and they are merged once
+ * the workers are done, so recording a game never waits on another thread.
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ */
+public class GameStatistics
+{
+	private int nrGamesPlayed = 0;
+	private long nrGuessesTotal = 0;
+	private int maxNrGuessesForOneGame = 0;
+	private int nrGamesAtMaxGuesses = 0;
+	private final GuesserMetrics guesserMetrics = new GuesserMetrics();
+
+	/**
+	 * Records a solved game.
+	 *
+	 * @param nrGuesses
+	 *            The number of guesses it took.
+	 */
+	public void record(int nrGuesses)
+	{
+		nrGamesPlayed++;
+		nrGuessesTotal += nrGuesses;
+		if (nrGuesses > maxNrGuessesForOneGame)
+		{
+			maxNrGuessesForOneGame = nrGuesses;
+			nrGamesAtMaxGuesses = 1;
+		}
+		else if (nrGuesses == maxNrGuessesForOneGame)
+		{
+			nrGamesAtMaxGuesses++;
+		}
+	}
+
+	/**
+	 * Adds the games recorded by other statistics to these.
+	 *
+	 * @param other
+	 */
+	public void merge(GameStatistics other)
+	{
+		nrGamesPlayed += other.nrGamesPlayed;
+		nrGuessesTotal += other.nrGuessesTotal;
+		if (other.maxNrGuessesForOneGame > maxNrGuessesForOneGame)
+		{
+			maxNrGuessesForOneGame = other.maxNrGuessesForOneGame;
+			nrGamesAtMaxGuesses = other.nrGamesAtMaxGuesses;
+		}
+		else if (other.maxNrGuessesForOneGame == maxNrGuessesForOneGame)
+		{
+			nrGamesAtMaxGuesses += other.nrGamesAtMaxGuesses;
+		}
+		guesserMetrics.merge(other.guesserMetrics);
+	}
+
+	/**
+	 *
+	 * @return The number of games recorded.
+	 */
+	public int getNrGamesPlayed()
+	{
+		return nrGamesPlayed;
+	}
+
+	/**
+	 *
+	 * @return The average number of guesses per game.
+	 */
+	public float getAverageNrGuesses()
+	{
+		return nrGuessesTotal / (float) nrGamesPlayed;
+	}
+
+	/**
+	 *
+	 * @return The largest number of guesses any game took.
+	 */
+	public int getMaxNrGuessesForOneGame()
+	{
+		return maxNrGuessesForOneGame;
+	}
+
+	/**
+	 *
+	 * @return The fraction of games that took the largest number of guesses.
+	 */
+	public float getFractionOfGamesAtMax()
+	{
+		return nrGamesAtMaxGuesses / (float) nrGamesPlayed;
+	}
+
+	/**
+	 *
+	 * @return The metrics of the guessers that played the games, once they
+	 *         have been merged in.
+	 */
+	public GuesserMetrics getGuesserMetrics()
+	{
+		return guesserMetrics;
+	}
+
+	/**
+	 * Prints the number of guesses the games took, one figure per line.
+	 *
+	 * @param out
+	 */
+	public void print(PrintStream out)
+	{
+		out.println("\t AVERAGE NUMBER OF GUESSES: " + getAverageNrGuesses());
+		out.println("\t MAXIMUM NUMBER OF GUESSES: "
+				+ getMaxNrGuessesForOneGame());
+		out.println("\t   PERCENT OF GAMES AT MAX: "
+				+ getFractionOfGamesAtMax());
+	}
+}
@@ -0,0 +1,118 @@
+package testing;
+
+import java.util.Arrays;
+
+/**
+ * The record of one game in a trace: every guess as a packed code, the
+ * ordinal of the feedback it received and the nanoseconds from asking for
+ * the guess to receiving its feedback. A GameTrace is refilled for every game
+ * rather than allocated anew, both when recording and when reading a trace.
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ */
+public class GameTrace
+{
+	private static final int INITIAL_CAPACITY = 16;
+
+	private int gameNr;
+	private int nrGuesses;
+	private long[] guesses = new long[INITIAL_CAPACITY];
+	private int[] feedbackOrdinals = new int[INITIAL_CAPACITY];
+	private long[] nanos = new long[INITIAL_CAPACITY];
+
+	/**
+	 * Empties the record for a new game.
+	 *
+	 * @param gameNr
+	 */
+	public void clear(int gameNr)
+	{
+		this.gameNr = gameNr;
+		nrGuesses = 0;
+	}
+
+	/**
+	 * Appends a guess to the game.
+	 *
+	 * @param guess
+	 *            The packed guess.
+	 * @param feedbackOrdinal
+	 * @param nanos
+	 *            Time taken to guess and score it.
+	 */
+	public void add(long guess, int feedbackOrdinal, long nanos)
+	{
+		if (nrGuesses == guesses.length)
+		{
+			guesses = Arrays.copyOf(guesses, nrGuesses * 2);
+			feedbackOrdinals = Arrays.copyOf(feedbackOrdinals,
+					nrGuesses * 2);
+			this.nanos = Arrays.copyOf(this.nanos, nrGuesses * 2);
+		}
+		guesses[nrGuesses] = guess;
+		feedbackOrdinals[nrGuesses] = feedbackOrdinal;
+		this.nanos[nrGuesses] = nanos;
+		nrGuesses++;
+	}
+
+	/**
+	 *
+	 * @return The number of the game in its run.
+	 */
+	public int getGameNr()
+	{
+		return gameNr;
+	}
+
+	/**
+	 *
+	 * @return The number of guesses made.
+	 */
+	public int getNrGuesses()
+	{
+		return nrGuesses;
+	}
+
+	/**
+	 *
+	 * @param turn
+	 *            The number of the guess, from 0.
+	 * @return The packed guess.
+	 */
+	public long getGuess(int turn)
+	{
+		return guesses[turn];
+	}
+
+	/**
+	 *
+	 * @param turn
+	 * @return The ordinal of the feedback the guess received.
+	 */
+	public int getFeedbackOrdinal(int turn)
+	{
+		return feedbackOrdinals[turn];
+	}
+
+	/**
+	 *
+	 * @param turn
+	 * @return The nanoseconds taken to guess and score it.
+	 */
+	public long getNanos(int turn)
+	{
+		return nanos[turn];
+	}
+
+	/**
+	 *
+	 * @return The nanoseconds taken by the whole game.
+	 */
+	public long getTotalNanos()
+	{
+		long total = 0;
+		for (int i = 0; i < nrGuesses; i++)
+			total += nanos[i];
+		return total;
+	}
+}
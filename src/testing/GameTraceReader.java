@@ -0,0 +1,236 @@
+package testing;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import data.CodeSequence;
+import data.FeedbackSpace;
+
+/**
+ * Reads back the games of a trace written by a GameTraceWriter, one record at
+ * a time into a reused GameTrace, so millions of games can be replayed or
+ * aggregated without allocating per game. Run on its own, it prints the
+ * statistics of the traced games, and replays them with -v.
+ *
+ * Usage: GameTraceReader [-v] <trace file>
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ */
+public class GameTraceReader
+{
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final int nrPegs;
+	private final int nrColors;
+	private final int codeSize;
+
+	/**
+	 * Opens a trace and reads its header.
+	 *
+	 * @param file
+	 * @throws IOException
+	 *             If the file cannot be read or is not a trace.
+	 */
+	public GameTraceReader(File file) throws IOException
+	{
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		buffer.limit(0);
+
+		try
+		{
+			if (!fill(GameTraceWriter.HEADER_SIZE)
+					|| buffer.getInt() != GameTraceWriter.MAGIC
+					|| buffer.get() != GameTraceWriter.VERSION)
+				throw new IOException(file + " is not a game trace");
+			nrPegs = buffer.get();
+			nrColors = buffer.get();
+			buffer.get();
+		}
+		catch (IOException e)
+		{
+			channel.close();
+			throw e;
+		}
+		codeSize = GameTraceWriter.codeSize(nrPegs);
+	}
+
+	/**
+	 * Makes sure the buffer holds at least a number of bytes, unless the file
+	 * ends first.
+	 *
+	 * @param nrBytes
+	 * @return False if the file ends before then.
+	 * @throws IOException
+	 */
+	private boolean fill(int nrBytes) throws IOException
+	{
+		if (buffer.remaining() >= nrBytes)
+			return true;
+		buffer.compact();
+		while (buffer.position() < nrBytes)
+			if (channel.read(buffer) < 0)
+				break;
+		buffer.flip();
+		return buffer.remaining() >= nrBytes;
+	}
+
+	private int readByte() throws IOException
+	{
+		if (!fill(1))
+			throw new EOFException("The trace ends in the middle of a game");
+		return buffer.get() & 0xFF;
+	}
+
+	private long readVarint() throws IOException
+	{
+		long value = 0;
+		for (int shift = 0;; shift += 7)
+		{
+			int b = readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+	}
+
+	/**
+	 * Reads the next game of the trace.
+	 *
+	 * @param game
+	 *            The record to fill.
+	 * @return False if there are no games left.
+	 * @throws IOException
+	 *             If the trace cannot be read or ends in the middle of a game.
+	 */
+	public boolean read(GameTrace game) throws IOException
+	{
+		if (!fill(1))
+			return false;
+
+		game.clear((int) readVarint());
+		int nrGuesses = (int) readVarint();
+		for (int i = 0; i < nrGuesses; i++)
+		{
+			long guess = 0;
+			for (int b = 0; b < codeSize; b++)
+				guess |= (long) readByte() << (b * 8);
+			int feedbackOrdinal = readByte();
+			game.add(guess, feedbackOrdinal, readVarint());
+		}
+		return true;
+	}
+
+	/**
+	 * Closes the trace.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+
+	/**
+	 *
+	 * @return The number of pegs of the traced games.
+	 */
+	public int getNrPegs()
+	{
+		return nrPegs;
+	}
+
+	/**
+	 *
+	 * @return The number of colors of the traced games.
+	 */
+	public int getNrColors()
+	{
+		return nrColors;
+	}
+
+	/**
+	 * Prints the statistics of a trace, replaying every game first with -v.
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args)
+	{
+		boolean replay = false;
+		String fileName = null;
+		for (int i = 0; i < args.length; i++)
+			if (args[i].equals("-v"))
+				replay = true;
+			else if (fileName == null)
+				fileName = args[i];
+			else
+				System.out.println("Unknown command line argument - \""
+						+ args[i] + "\"");
+
+		if (fileName == null)
+		{
+			System.err.println("Usage: GameTraceReader [-v] <trace file>");
+			System.exit(-1);
+		}
+
+		GameStatistics statistics = new GameStatistics();
+		long totalNanos = 0;
+		long nrGuesses = 0;
+		long start = System.currentTimeMillis();
+		try
+		{
+			GameTraceReader reader = new GameTraceReader(new File(fileName));
+			FeedbackSpace feedbackSpace = FeedbackSpace.forPegs(reader.getNrPegs());
+			GameTrace game = new GameTrace();
+			while (reader.read(game))
+			{
+				statistics.record(game.getNrGuesses());
+				nrGuesses += game.getNrGuesses();
+				totalNanos += game.getTotalNanos();
+
+				if (replay)
+				{
+					System.out.println("\n----------------------------------------------");
+					for (int i = 0; i < game.getNrGuesses(); i++)
+					{
+						System.out.print("GUESS: "
+								+ new CodeSequence(game.getGuess(i),
+										reader.getNrPegs()));
+						System.out.println("\tFEEDBACK:"
+								+ feedbackSpace.get(game.getFeedbackOrdinal(i))
+								+ "\n");
+					}
+					System.out.println("\nSOLVED GAME #" + game.getGameNr()
+							+ " IN " + game.getNrGuesses() + " GUESSES!");
+					System.out.println("----------------------------------------------\n");
+				}
+			}
+			System.out.println("Read " + statistics.getNrGamesPlayed()
+					+ " games with " + reader.getNrPegs() + " PEGS and "
+					+ reader.getNrColors() + " COLORS in "
+					+ (System.currentTimeMillis() - start) / 1000.0
+					+ " seconds...");
+			reader.close();
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not read the trace " + fileName + ": "
+					+ e.getMessage());
+			System.exit(-1);
+		}
+
+		if (statistics.getNrGamesPlayed() == 0)
+			return;
+		statistics.print(System.out);
+		System.out.println("\t     AVERAGE TIME PER GAME: "
+				+ totalNanos / statistics.getNrGamesPlayed() / 1000 + " us");
+		System.out.println("\t    AVERAGE TIME PER GUESS: "
+				+ totalNanos / nrGuesses / 1000 + " us");
+	}
+}
@@ -0,0 +1,184 @@
+package testing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import data.PackedCode;
+
+/**
+ * Appends games to a binary trace file, so long runs can be analyzed offline
+ * with a GameTraceReader without printing every guess. The file starts with a
+ * header naming the number of pegs and colors, followed by one record per
+ * game:
+ *
+ * varint game number, varint number of guesses, then per guess the packed
+ * code in (pegs + 1) / 2 little-endian bytes, one byte of feedback ordinal and
+ * a varint of nanoseconds.
+ *
+ * A 4 peg game takes about 30 bytes. Records are gathered in a direct buffer
+ * and written to the channel when it fills up, so recording a game is mostly
+ * a few puts. Workers may share a writer; every game is written whole.
+ *
+ * @author M. Curtis, M. Edoror and B. Farrington
+ */
+public class GameTraceWriter
+{
+	static final int MAGIC = 0x4D4D4754; // "MMGT"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 8;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int MAX_VARINT_SIZE = 10;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final int nrPegs;
+	private final int nrColors;
+	private final int codeSize;
+
+	/**
+	 * Opens a trace for appending, writing its header if the file is new.
+	 *
+	 * @param file
+	 * @param nrPegs
+	 * @param nrColors
+	 * @throws IOException
+	 *             If the file cannot be written or holds a trace of another
+	 *             game.
+	 */
+	public GameTraceWriter(File file, int nrPegs, int nrColors)
+			throws IOException
+	{
+		if (!PackedCode.isPackable(nrPegs, nrColors))
+			throw new IllegalArgumentException("Cannot trace " + nrPegs
+					+ " pegs with " + nrColors + " colors");
+
+		this.nrPegs = nrPegs;
+		this.nrColors = nrColors;
+		codeSize = codeSize(nrPegs);
+		buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+		try
+		{
+			if (channel.size() == 0)
+			{
+				buffer.putInt(MAGIC).put((byte) VERSION).put((byte) nrPegs)
+						.put((byte) nrColors).put((byte) 0);
+				flush();
+			}
+			else
+			{
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				while (header.hasRemaining())
+					if (channel.read(header, header.position()) < 0)
+						break;
+				header.flip();
+				if (header.remaining() < HEADER_SIZE
+						|| header.getInt() != MAGIC
+						|| header.get() != VERSION || header.get() != nrPegs
+						|| header.get() != nrColors)
+					throw new IOException(file
+							+ " is not a trace of games with " + nrPegs
+							+ " pegs and " + nrColors + " colors");
+			}
+			channel.position(channel.size());
+		}
+		catch (IOException e)
+		{
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 *
+	 * @param nrPegs
+	 * @return The number of bytes a packed code takes in a trace.
+	 */
+	static int codeSize(int nrPegs)
+	{
+		return (nrPegs + 1) / 2;
+	}
+
+	/**
+	 * Appends a game to the trace.
+	 *
+	 * @param game
+	 * @throws IOException
+	 */
+	public synchronized void write(GameTrace game) throws IOException
+	{
+		int nrGuesses = game.getNrGuesses();
+		if (buffer.remaining() < 2 * MAX_VARINT_SIZE)
+			flush();
+		putVarint(game.getGameNr());
+		putVarint(nrGuesses);
+		for (int i = 0; i < nrGuesses; i++)
+		{
+			if (buffer.remaining() < codeSize + 1 + MAX_VARINT_SIZE)
+				flush();
+			long guess = game.getGuess(i);
+			for (int b = 0; b < codeSize; b++)
+				buffer.put((byte) (guess >>> (b * 8)));
+			buffer.put((byte) game.getFeedbackOrdinal(i));
+			putVarint(game.getNanos(i));
+		}
+	}
+
+	private void putVarint(long value)
+	{
+		while ((value & ~0x7FL) != 0)
+		{
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	/**
+	 * Writes the gathered records to the file.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void flush() throws IOException
+	{
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * Writes the gathered records and closes the file.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException
+	{
+		flush();
+		channel.close();
+	}
+
+	/**
+	 *
+	 * @return The number of pegs of the traced games.
+	 */
+	public int getNrPegs()
+	{
+		return nrPegs;
+	}
+
+	/**
+	 *
+	 * @return The number of colors of the traced games.
+	 */
+	public int getNrColors()
+	{
+		return nrColors;
+	}
+}
@@ -1,15 +1,31 @@
 package testing;
 
 import game.Guesser;
+import game.KnuthDecisionTree;
 import game.KnuthGuesser;
 import game.Learner;
+import game.OpeningBook;
 import game.Oracle;
+import game.PartitionHeuristic;
 import game.SmartRandomGuesser;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import data.CodeSequence;
 import data.Feedback;
+import data.PackedCode;
+import data.RandomSource;
 
 /**
  * This is the main driver for our project which runs games between
@@ -22,15 +38,27 @@ import data.Feedback;
  * 
  *  Usage:
  *  -v       	(Turns on verbose output)
- *  -k	     	(Limits the number of colors and pegs to the standard 6 and 4, and uses the Knuth Guesser)
+ *  -k	     	(Uses the Knuth Guesser, defaulting the number of colors and pegs to the standard 6 and 4)
+ *  -h <String>	(Sets the heuristic the Knuth Guesser rates guesses with: worst, expected, entropy or parts)
+ *  -d		 	(Makes the Knuth Guesser follow a decision tree compiled once and saved next to the feedback tables)
+ *  -o		 	(Takes the first two guesses from an opening book searched once with the Knuth Guesser's heuristic
+ *               and saved next to the feedback tables)
  *  -l		 	(Uses the Learner Guesser which takes into account information across Games)
  *  -p <int> 	(Sets the number of pegs to the specified value)
  *  -c <int> 	(Sets the number of colors to the specified value)
  *  -g <int> 	(Sets the number of games to be played to the specified value)
+ *  -t <int> 	(Sets the number of threads used to evaluate guesses, defaults to the number of processors)
+ *  -w <int> 	(Plays the games on the specified number of workers, each with its own Guesser and Oracle)
+ *  -s <long>	(Seeds the random numbers of every game from the specified value, making runs reproducible)
+ *  -r <String>	(Records every game to the specified binary trace file, appending to it if it exists; read it back with
+ *               GameTraceReader)
+ *  -m		 	(Prints the guessers' metrics at the end of the run: candidates per guess, consistent codes per turn,
+ *               consistency checks, best effort guesses and time spent generating and validating codes)
  *  -b <String>	(Turns on bias logic for the specified bias by way of a bias tag String-- was used for testing)
- *  <String>	(If a valid Oracle file, sets the Oracle to use codes from this file-- the number of pegs, colors, and
+ *  <String>	(If a valid Oracle file, text or packed by PackedCodeFile, sets the Oracle to use codes from this file, read
+ *               one game at a time-- the number of pegs, colors, and
  *               games will be determined by the file and the corresponding command-line arguments will be ignored; also
- *               overrides the Knuth Guesser option if the Oracle file doesn't contain standard (4x6) game codes)
+ *               overrides the Knuth Guesser option if the Oracle file's code space is too large to enumerate)
  * 
  * @author M. Curtis, M. Edoror and B. Farrington
  */
@@ -43,16 +71,34 @@ public class Tester
 	private static final String NR_COLORS = "-c";
 	private static final String NR_GAMES = "-g";
 	private static final String BIAS_NUM = "-b";
+	private static final String NR_THREADS = "-t";
+	private static final String HEURISTIC = "-h";
+	private static final String DECISION_TREE = "-d";
+	private static final String OPENING_BOOK = "-o";
+	private static final String NR_WORKERS = "-w";
+	private static final String SEED = "-s";
+	private static final String METRICS = "-m";
+	private static final String TRACE = "-r";
 
 	private static Scanner in = null;
 	private static String fileName = null;
 	private static boolean verbose = false;
 	private static boolean knuth = false;
 	private static boolean learn = false;
+	private static boolean decisionTree = false;
+	private static boolean openingBook = false;
+	private static boolean printMetrics = false;
+	private static String traceFileName = null;
+	private static GameTraceWriter traceWriter = null;
 	private static int nrPegs = 0;
 	private static int nrColors = 0;
 	private static int nrGames = 0;
 	private static String bias = "";
+	private static int nrThreads = Runtime.getRuntime().availableProcessors();
+	private static int nrWorkers = 1;
+	private static boolean seeded = false;
+	private static long seed = 0;
+	private static PartitionHeuristic heuristic = PartitionHeuristic.WORST_CASE;
 
 	/**
 	 * Sets up the command line arguments.
@@ -60,7 +106,9 @@ public class Tester
 	 * @param args
 	 *            VERBOSITY_ON = "-v"; USE_KNUTH_4X6 = "-k"; LEARNING = "-l";
 	 *            NR_PEGS = "-p"; NR_COLORS = "-c"; NR_GAMES = "-g";BIAS_NUM =
-	 *            "-b";
+	 *            "-b"; NR_THREADS = "-t"; HEURISTIC = "-h"; DECISION_TREE =
+	 *            "-d"; OPENING_BOOK = "-o"; NR_WORKERS = "-w"; SEED = "-s";
+	 *            METRICS = "-m"; TRACE = "-r";
 	 */
 	private static void verifyArgsAndSetup(String[] args)
 	{
@@ -71,6 +119,14 @@ public class Tester
 				knuth = true;
 			else if (args[i].equals(LEARNING))
 				learn = true;
+			else if (args[i].equals(DECISION_TREE))
+				decisionTree = true;
+			else if (args[i].equals(OPENING_BOOK))
+				openingBook = true;
+			else if (args[i].equals(METRICS))
+				printMetrics = true;
+			else if (args[i].equals(TRACE))
+				traceFileName = args[++i];
 			else if (args[i].equals(NR_PEGS))
 				nrPegs = Integer.parseInt(args[++i]);
 			else if (args[i].equals(NR_COLORS))
@@ -79,6 +135,25 @@ public class Tester
 				nrGames = Integer.parseInt(args[++i]);
 			else if (args[i].equals(BIAS_NUM))
 				bias = args[++i];
+			else if (args[i].equals(NR_THREADS))
+				nrThreads = Integer.parseInt(args[++i]);
+			else if (args[i].equals(NR_WORKERS))
+				nrWorkers = Integer.parseInt(args[++i]);
+			else if (args[i].equals(SEED))
+			{
+				seeded = true;
+				seed = Long.parseLong(args[++i]);
+			}
+			else if (args[i].equals(HEURISTIC))
+			{
+				heuristic = PartitionHeuristic.forName(args[++i]);
+				if (heuristic == null)
+				{
+					System.err.println("Unknown heuristic - \"" + args[i]
+							+ "\"");
+					System.exit(-1);
+				}
+			}
 			else if (fileName == null)
 				fileName = args[i];
 			else
@@ -98,20 +173,15 @@ public class Tester
 	{
 		if (fileName != null)
 		{
-			Oracle oracle = new Oracle(fileName);
-			if (knuth
-					&& !(oracle.getNumPegs() == 4 && oracle.getNumPegColors() == 6))
-			{
-				knuth = false;
-			}
-
-			return oracle;
+			return new Oracle(fileName);
 		}
 
 		if (knuth)
 		{
-			nrPegs = 4;
-			nrColors = 6;
+			if (nrPegs <= 0)
+				nrPegs = 4;
+			if (nrColors <= 0)
+				nrColors = 6;
 		}
 		else
 		{
@@ -138,6 +208,264 @@ public class Tester
 		return new Oracle(nrPegs, nrColors);
 	}
 
+	/**
+	 * Creates a guesser for the game. The decision tree and opening book are
+	 * immutable, so every guesser can share them.
+	 * 
+	 * @param nrPegs
+	 * @param nrColors
+	 * @param tree
+	 * @param book
+	 * @param nrGuesserThreads
+	 *            The number of threads the Knuth Guesser evaluates guesses on
+	 *            and the Smart Random Guesser filters its consistent codes on.
+	 * @return
+	 */
+	private static Guesser createGuesser(int nrPegs, int nrColors,
+			KnuthDecisionTree tree, OpeningBook book, int nrGuesserThreads)
+	{
+		if (knuth)
+		{
+			KnuthGuesser knuthGuesser = new KnuthGuesser(nrPegs, nrColors,
+					heuristic, nrGuesserThreads);
+			knuthGuesser.setDecisionTree(tree);
+			knuthGuesser.setOpeningBook(book);
+			return knuthGuesser;
+		}
+		else if (learn)
+		{
+			Learner learner = new Learner(nrPegs, nrColors);
+			learner.setOpeningBook(book);
+			return learner;
+		}
+		else
+		{
+			SmartRandomGuesser randomGuesser = new SmartRandomGuesser(nrPegs,
+					nrColors, bias, nrGuesserThreads);
+			randomGuesser.setOpeningBook(book);
+			return randomGuesser;
+		}
+	}
+
+	/**
+	 * Plays one game between a guesser and an oracle until the code is found.
+	 * 
+	 * @param guesser
+	 * @param oracle
+	 * @param gameNr
+	 * @param out
+	 *            Where to write the verbose output of the game.
+	 * @param trace
+	 *            The record to fill for the trace, or null if not tracing.
+	 * @return The number of guesses it took.
+	 */
+	private static int playGame(Guesser guesser, Oracle oracle, int gameNr,
+			PrintStream out, GameTrace trace)
+	{
+		int nrGuessesPerGame = 0;
+
+		if (verbose)
+			out.println("\n----------------------------------------------");
+		if (trace != null)
+			trace.clear(gameNr);
+
+		while (true)
+		{
+			long startNanos = System.nanoTime();
+			CodeSequence guess = guesser.guess();
+			Feedback feedback = oracle.getFeedbackFor(guess);
+			guesser.giveFeedbackForLastGuess(feedback);
+			nrGuessesPerGame++;
+			if (trace != null)
+				trace.add(guess.getPacked(), feedback.getOrdinal(),
+						System.nanoTime() - startNanos);
+
+			if (verbose)
+			{
+				out.print("GUESS: " + guess);
+				out.println("\tFEEDBACK:" + feedback + "\n");
+			}
+
+			if (feedback.getBlack() == oracle.getNumPegs())
+				break;
+		}
+
+		if (verbose)
+		{
+			out.println("\nSOLVED GAME #" + gameNr + " IN " + nrGuessesPerGame
+					+ " GUESSES!");
+			out.println("----------------------------------------------\n");
+		}
+		return nrGuessesPerGame;
+	}
+
+	/**
+	 * Plays the games on several workers, each with its own guesser and
+	 * oracle. Workers take the codes of the file from the given oracle one at
+	 * a time if there is one, or else share a count of the random games left.
+	 * The verbose output of a game is printed in one piece once it is solved.
+	 * 
+	 * @param oracle
+	 *            The oracle holding the codes from the file, if any.
+	 * @param tree
+	 * @param book
+	 * @return The merged statistics of all workers.
+	 */
+	private static GameStatistics playInParallel(final Oracle oracle,
+			final KnuthDecisionTree tree, final OpeningBook book)
+	{
+		final boolean useCodesFromFile = oracle.hasCodeToUseFromFile();
+		final AtomicInteger nrGamesStarted = new AtomicInteger();
+		final int nrGuesserThreads = Math.max(1, nrThreads / nrWorkers);
+
+		ExecutorService workers = Executors.newFixedThreadPool(nrWorkers);
+		ArrayList<Future<GameStatistics>> results = new ArrayList<Future<GameStatistics>>();
+		for (int i = 0; i < nrWorkers; i++)
+			results.add(workers.submit(new Callable<GameStatistics>()
+			{
+				public GameStatistics call() throws IOException
+				{
+					Guesser guesser = createGuesser(oracle.getNumPegs(),
+							oracle.getNumPegColors(), tree, book,
+							nrGuesserThreads);
+					Oracle workerOracle = new Oracle(oracle.getNumPegs(),
+							oracle.getNumPegColors());
+					GameStatistics statistics = new GameStatistics();
+					ByteArrayOutputStream transcript = new ByteArrayOutputStream();
+					PrintStream out = new PrintStream(transcript);
+					GameTrace trace = (traceWriter == null) ? null
+							: new GameTrace();
+
+					while (true)
+					{
+						int gameNr;
+						if (useCodesFromFile)
+						{
+							// A code and its number are taken together, so
+							// games are numbered in file order
+							CodeSequence code;
+							synchronized (oracle)
+							{
+								code = oracle.takeCodeFromFile();
+								gameNr = nrGamesStarted.incrementAndGet();
+							}
+							if (code == null)
+								break;
+							workerOracle.setSecretCode(code);
+							if (seeded)
+								RandomSource.seed(seed, gameNr);
+						}
+						else
+						{
+							gameNr = nrGamesStarted.incrementAndGet();
+							if (gameNr > nrGames)
+								break;
+							if (seeded)
+								RandomSource.seed(seed, gameNr);
+							workerOracle.generateNextCode();
+						}
+
+						statistics.record(playGame(guesser, workerOracle,
+								gameNr, out, trace));
+						if (trace != null)
+							traceWriter.write(trace);
+						guesser.reset();
+
+						if (verbose)
+						{
+							out.flush();
+							System.out.print(transcript.toString());
+							transcript.reset();
+						}
+					}
+					statistics.getGuesserMetrics().merge(guesser.getMetrics());
+					return statistics;
+				}
+			}));
+		workers.shutdown();
+
+		GameStatistics statistics = new GameStatistics();
+		try
+		{
+			for (Future<GameStatistics> result : results)
+				statistics.merge(result.get());
+		}
+		catch (InterruptedException e)
+		{
+			System.err.println("Interrupted while waiting for the workers");
+			System.exit(-1);
+		}
+		catch (ExecutionException e)
+		{
+			System.err.println("A worker failed: " + e.getCause());
+			System.exit(-1);
+		}
+		return statistics;
+	}
+
+	/**
+	 * Opens the trace file the games are recorded to.
+	 * 
+	 * @param nrPegs
+	 * @param nrColors
+	 */
+	private static void openTrace(int nrPegs, int nrColors)
+	{
+		if (!PackedCode.isPackable(nrPegs, nrColors))
+		{
+			System.err.println("Cannot trace games with " + nrPegs
+					+ " pegs and " + nrColors + " colors");
+			System.exit(-1);
+		}
+		try
+		{
+			traceWriter = new GameTraceWriter(new File(traceFileName),
+					nrPegs, nrColors);
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not open the trace " + traceFileName
+					+ ": " + e.getMessage());
+			System.exit(-1);
+		}
+	}
+
+	/**
+	 * Appends a game to the trace file.
+	 * 
+	 * @param trace
+	 */
+	private static void writeTrace(GameTrace trace)
+	{
+		try
+		{
+			traceWriter.write(trace);
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not write the trace " + traceFileName
+					+ ": " + e.getMessage());
+			System.exit(-1);
+		}
+	}
+
+	/**
+	 * Writes what is left of the trace and closes it.
+	 */
+	private static void closeTrace()
+	{
+		try
+		{
+			traceWriter.close();
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not write the trace " + traceFileName
+					+ ": " + e.getMessage());
+			System.exit(-1);
+		}
+	}
+
 	/**
 	 * Main method for execution.
 	 * 
@@ -150,72 +478,79 @@ public class Tester
 		// long elapsed = 0;
 		verifyArgsAndSetup(args);
 		Oracle oracle = initOracle();
-		Guesser guesser;
+		KnuthDecisionTree tree = null;
+		OpeningBook book = null;
 
-		if (knuth)
-			guesser = new KnuthGuesser();
-		else if (learn)
-			guesser = new Learner(oracle.getNumPegs(), oracle.getNumPegColors());
-		else
-			guesser = new SmartRandomGuesser(oracle.getNumPegs(),
-					oracle.getNumPegColors(),
-					bias);
+		if (openingBook)
+		{
+			book = OpeningBook.forSpace(oracle.getNumPegs(),
+					oracle.getNumPegColors(), heuristic, nrThreads);
+			if (book == null)
+				System.out.println("Too many codes to search an opening book, guessing without one...");
+		}
 
-		int nrGamesPlayed = 0;
-		int nrGuessesTotal = 0;
-		int nrGuessesPerGame;
-		int maxNrGuessesForOneGame = 0;
-		int nrGamesAtMaxGuesses = 0;
+		if (knuth
+				&& !KnuthGuesser.canSolve(oracle.getNumPegs(),
+						oracle.getNumPegColors()))
+		{
+			System.out.println("Too many codes for the Knuth Guesser with "
+					+ oracle.getNumPegs() + " PEGS and "
+					+ oracle.getNumPegColors() + " COLORS, guessing randomly...");
+			knuth = false;
+		}
 
-		while (oracle.hasCodeToUseFromFile() || nrGamesPlayed < nrGames)
+		if (knuth && decisionTree)
 		{
-			nrGuessesPerGame = 0;
+			tree = KnuthDecisionTree.forSpace(oracle.getNumPegs(),
+					oracle.getNumPegColors(), heuristic, nrThreads);
+			if (tree == null)
+				System.out.println("Too many codes to compile a decision tree, searching every guess...");
+		}
 
-			if (verbose)
-				System.out.println("\n----------------------------------------------");
+		if (traceFileName != null)
+			openTrace(oracle.getNumPegs(), oracle.getNumPegColors());
 
-			while (true)
-			{
-				CodeSequence guess = guesser.guess();
-				Feedback feedback = oracle.getFeedbackFor(guess);
-				guesser.giveFeedbackForLastGuess(feedback);
-				nrGuessesPerGame++;
+		GameStatistics statistics;
+		if (nrWorkers > 1)
+		{
+			statistics = playInParallel(oracle, tree, book);
+			elapsedTime = (System.currentTimeMillis() - start) / 1000.0;
+		}
+		else
+		{
+			Guesser guesser = createGuesser(oracle.getNumPegs(),
+					oracle.getNumPegColors(), tree, book, nrThreads);
+			GameTrace trace = (traceWriter == null) ? null : new GameTrace();
+			statistics = new GameStatistics();
 
-				if (verbose)
+			while (oracle.hasCodeToUseFromFile()
+					|| statistics.getNrGamesPlayed() < nrGames)
+			{
+				int gameNr = statistics.getNrGamesPlayed() + 1;
+				if (seeded)
 				{
-					System.out.print("GUESS: " + guess);
-					System.out.println("\tFEEDBACK:" + feedback + "\n");
+					// Draw the random code again from the seeded generator so
+					// a game plays out the same as it would on any worker
+					RandomSource.seed(seed, gameNr);
+					if (!oracle.hasCodeToUseFromFile())
+						oracle.generateNextCode();
 				}
-
-				if (feedback.getBlack() == oracle.getNumPegs())
-					break;
-			}
-			nrGamesPlayed++;
-			nrGuessesTotal += nrGuessesPerGame;
-			if (nrGuessesPerGame > maxNrGuessesForOneGame)
-			{
-				maxNrGuessesForOneGame = nrGuessesPerGame;
-				nrGamesAtMaxGuesses = 1;
-				// System.out.println( guesser );
+				statistics.record(playGame(guesser, oracle, gameNr, System.out,
+						trace));
+				if (trace != null)
+					writeTrace(trace);
+				oracle.generateNextCode();
+				guesser.reset();
+				elapsedTime += (System.currentTimeMillis() - start) / 1000.0;
+				start = System.currentTimeMillis();
 			}
-			else if (nrGuessesPerGame == maxNrGuessesForOneGame)
-			{
-				nrGamesAtMaxGuesses++;
-			}
-
-			if (verbose)
-			{
-				System.out.println("\nSOLVED GAME #" + nrGamesPlayed + " IN "
-						+ nrGuessesPerGame + " GUESSES!");
-				System.out.println("----------------------------------------------\n");
-			}
-
-			oracle.generateNextCode();
-			guesser.reset();
-			elapsedTime += (System.currentTimeMillis() - start) / 1000.0;
-			start = System.currentTimeMillis();
+			statistics.getGuesserMetrics().merge(guesser.getMetrics());
 		}
 
+		if (traceWriter != null)
+			closeTrace();
+
+		int nrGamesPlayed = statistics.getNrGamesPlayed();
 
 		System.out.println("CPU Time: " + elapsedTime + " in seconds");
 		System.out.println("Average CPU Time " + elapsedTime
@@ -224,11 +559,9 @@ public class Tester
 				+ (nrGamesPlayed > 1 ? "s" : "") + " with "
 				+ oracle.getNumPegs() + " PEGS and " + oracle.getNumPegColors()
 				+ " COLORS...");
-		System.out.println("\tAVERGAGE NUMBER OF GUESSES: " + nrGuessesTotal
-				/ (float) nrGamesPlayed);
-		System.out.println("\t MAXIMUM NUMBER OF GUESSES: "
-				+ maxNrGuessesForOneGame);
-		System.out.println("\t   PERCENT OF GAMES AT MAX: "
-				+ nrGamesAtMaxGuesses / (float) nrGamesPlayed);
+		statistics.print(System.out);
+		if (printMetrics)
+			System.out.println("GUESSER METRICS:\n"
+					+ statistics.getGuesserMetrics());
 	}
 }